@@ -0,0 +1,17 @@
+package parser;
+
+import java.util.List;
+
+/**
+ * Receives the branch sets read by the parser, in the order they appear in the
+ * logic tree file, and attaches them to the logic tree being built.
+ */
+interface BranchSetBuilder {
+
+	/**
+	 * Attach the branches of a branch set to the current leaf nodes it applies
+	 * to, that is all the leaf nodes if applyToBranches contains ALL, or the
+	 * leaf nodes whose branchID is among the IDs listed in applyToBranches.
+	 */
+	void addBranchSet(List<String> applyToBranches, List<LogicTreeNode> branches);
+}
@@ -0,0 +1,219 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Array based representation of a logic tree.
+ *
+ * Nodes are identified by an index (the root node has index 0), and the tree
+ * topology and data are stored in primitive arrays indexed by node:
+ *
+ * - parent: index of the parent node (-1 for the root node)
+ *
+ * - firstChild: index of the first child. The children of a node are stored
+ * one after the other, so the k-th child of node i has index firstChild[i] + k
+ *
+ * - childCount: number of children
+ *
+ * - weight: uncertainty weight
+ *
+ * - branch: index of the node data in a dictionary of distinct
+ * {@link LogicTreeNode} objects. In a logic tree the same branch is repeated
+ * under many nodes, so the dictionary contains one entry for each branch
+ * defined in the logic tree file, and not one for each node.
+ *
+ * A node therefore takes 24 bytes, and no object is allocated per node.
+ * Objects of this class are immutable. They can be created from a
+ * {@link Tree} or directly by the parser (see
+ * {@link LogicTreeParser#parseCompact()}).
+ */
+public class CompactLogicTree {
+
+	private final int[] parent;
+	private final int[] firstChild;
+	private final int[] childCount;
+	private final double[] weight;
+	private final int[] branch;
+
+	private final LogicTreeNode[] branches;
+
+	/**
+	 * Creates a compact representation of the given tree. Nodes are indexed
+	 * in breadth-first order.
+	 */
+	public CompactLogicTree(Tree<LogicTreeNode> tree) {
+		int size = tree.getNumberOfNodes();
+		parent = new int[size];
+		firstChild = new int[size];
+		childCount = new int[size];
+		weight = new double[size];
+		branch = new int[size];
+
+		Map<LogicTreeNode, Integer> dictionary = new HashMap<LogicTreeNode, Integer>();
+		List<LogicTreeNode> branchList = new ArrayList<LogicTreeNode>();
+
+		// nodes in breadth-first order: the children of node i are appended
+		// when node i is visited
+		List<Node<LogicTreeNode>> nodes = new ArrayList<Node<LogicTreeNode>>(
+				size);
+		nodes.add(tree.getRootElement());
+		parent[0] = -1;
+		for (int i = 0; i < size; i++) {
+			Node<LogicTreeNode> node = nodes.get(i);
+			firstChild[i] = nodes.size();
+			childCount[i] = node.getNumberOfChildren();
+			for (Node<LogicTreeNode> child : node.getChildren()) {
+				parent[nodes.size()] = i;
+				nodes.add(child);
+			}
+			LogicTreeNode data = node.getData();
+			Integer index = dictionary.get(data);
+			if (index == null) {
+				index = branchList.size();
+				dictionary.put(data, index);
+				branchList.add(data);
+			}
+			weight[i] = data.getUncertaintyWeight();
+			branch[i] = index;
+		}
+		branches = branchList.toArray(new LogicTreeNode[branchList.size()]);
+	}
+
+	/**
+	 * Creates a logic tree from its arrays (see
+	 * {@link CompactLogicTreeBuilder}).
+	 */
+	CompactLogicTree(int[] parent, int[] firstChild, int[] childCount,
+			double[] weight, int[] branch, LogicTreeNode[] branches) {
+		this.parent = parent;
+		this.firstChild = firstChild;
+		this.childCount = childCount;
+		this.weight = weight;
+		this.branch = branch;
+		this.branches = branches;
+	}
+
+	/**
+	 * Returns the index of the root node.
+	 */
+	public int getRoot() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of nodes in the tree.
+	 */
+	public int getNumberOfNodes() {
+		return parent.length;
+	}
+
+	/**
+	 * Returns the number of distinct branches (that is distinct
+	 * {@link LogicTreeNode} objects) in the tree.
+	 */
+	public int getNumberOfBranches() {
+		return branches.length;
+	}
+
+	/**
+	 * Returns the index of the parent of a node, or -1 for the root node.
+	 */
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	/**
+	 * Returns the number of children of a node.
+	 */
+	public int getNumberOfChildren(int node) {
+		return childCount[node];
+	}
+
+	/**
+	 * Returns the index of the k-th child of a node.
+	 */
+	public int getChild(int node, int k) {
+		if (k < 0 || k >= childCount[node]) {
+			throw new IndexOutOfBoundsException("Node " + node + " has "
+					+ childCount[node] + " children, requested child " + k);
+		}
+		return firstChild[node] + k;
+	}
+
+	/**
+	 * Returns true if the node has no children.
+	 */
+	public boolean isLeaf(int node) {
+		return childCount[node] == 0;
+	}
+
+	/**
+	 * Returns the uncertainty weight of a node.
+	 */
+	public double getWeight(int node) {
+		return weight[node];
+	}
+
+	/**
+	 * Returns the data of a node.
+	 */
+	public LogicTreeNode getData(int node) {
+		return branches[branch[node]];
+	}
+
+	/**
+	 * Returns the index of the data of a node in the branch dictionary (see
+	 * {@link #getBranch(int)}). Two nodes have the same branch index if and
+	 * only if they have equal data.
+	 */
+	public int getBranchIndex(int node) {
+		return branch[node];
+	}
+
+	/**
+	 * Returns the branch with the given index in the branch dictionary.
+	 */
+	public LogicTreeNode getBranch(int index) {
+		return branches[index];
+	}
+
+	/**
+	 * Returns the number of leaf nodes.
+	 */
+	public int getNumberOfLeafNodes() {
+		int n = 0;
+		for (int i = 0; i < childCount.length; i++) {
+			if (childCount[i] == 0) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Converts the compact representation into a {@link Tree}. Nodes with
+	 * equal data share the same {@link LogicTreeNode} instance.
+	 */
+	public Tree<LogicTreeNode> toTree() {
+		List<Node<LogicTreeNode>> nodes = new ArrayList<Node<LogicTreeNode>>(
+				parent.length);
+		for (int i = 0; i < parent.length; i++) {
+			Node<LogicTreeNode> node = new Node<LogicTreeNode>(getData(i));
+			nodes.add(node);
+		}
+		for (int i = 0; i < parent.length; i++) {
+			for (int k = 0; k < childCount[i]; k++) {
+				nodes.get(i).addChild(nodes.get(firstChild[i] + k));
+			}
+		}
+		Tree<LogicTreeNode> tree = new Tree<LogicTreeNode>();
+		tree.setRootElement(nodes.get(0));
+		return tree;
+	}
+}
@@ -0,0 +1,127 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link CompactLogicTree} from the branch sets read by the parser.
+ *
+ * Nodes are appended to growable arrays in the order they are created. A leaf
+ * node receives all its children from a single branch set, so the children of
+ * each node are stored one after the other, as required by
+ * {@link CompactLogicTree}. As in {@link LogicTreeBuilder}, the current leaf
+ * nodes are indexed by branchID.
+ */
+class CompactLogicTreeBuilder implements BranchSetBuilder {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int size;
+	private int[] parent = new int[INITIAL_CAPACITY];
+	private int[] firstChild = new int[INITIAL_CAPACITY];
+	private int[] childCount = new int[INITIAL_CAPACITY];
+	private double[] weight = new double[INITIAL_CAPACITY];
+	private int[] branch = new int[INITIAL_CAPACITY];
+
+	// distinct branches, and their index
+	private final List<LogicTreeNode> branches = new ArrayList<LogicTreeNode>();
+	private final Map<LogicTreeNode, Integer> dictionary = new HashMap<LogicTreeNode, Integer>();
+
+	// current leaf nodes indexed by branchID
+	private final Map<String, List<Integer>> leafNodes = new LinkedHashMap<String, List<Integer>>();
+
+	public CompactLogicTreeBuilder(LogicTreeNode root) {
+		addNode(-1, root);
+	}
+
+	public void addBranchSet(List<String> applyToBranches,
+			List<LogicTreeNode> branchSet) {
+		if (branchSet.isEmpty()) {
+			return;
+		}
+
+		// all the leaf nodes the branch set applies to get children, so they
+		// are removed from the index
+		List<Integer> nList = new ArrayList<Integer>();
+		if (applyToBranches.contains(LogicTreeParser.ALL)) {
+			for (List<Integer> nodes : leafNodes.values()) {
+				nList.addAll(nodes);
+			}
+			leafNodes.clear();
+		} else {
+			for (String branchID : new LinkedHashSet<String>(applyToBranches)) {
+				List<Integer> nodes = leafNodes.remove(branchID);
+				if (nodes != null) {
+					nList.addAll(nodes);
+				}
+			}
+		}
+
+		int[] index = new int[branchSet.size()];
+		for (int i = 0; i < index.length; i++) {
+			index[i] = getBranchIndex(branchSet.get(i));
+		}
+		for (int n : nList) {
+			firstChild[n] = size;
+			childCount[n] = index.length;
+			for (int i = 0; i < index.length; i++) {
+				addNode(n, index[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the logic tree built so far.
+	 */
+	public CompactLogicTree build() {
+		return new CompactLogicTree(Arrays.copyOf(parent, size),
+				Arrays.copyOf(firstChild, size), Arrays.copyOf(childCount,
+						size), Arrays.copyOf(weight, size), Arrays.copyOf(
+						branch, size), branches
+						.toArray(new LogicTreeNode[branches.size()]));
+	}
+
+	private void addNode(int parentNode, LogicTreeNode data) {
+		addNode(parentNode, getBranchIndex(data));
+	}
+
+	private void addNode(int parentNode, int branchIndex) {
+		if (size == parent.length) {
+			int capacity = 2 * size;
+			parent = Arrays.copyOf(parent, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			childCount = Arrays.copyOf(childCount, capacity);
+			weight = Arrays.copyOf(weight, capacity);
+			branch = Arrays.copyOf(branch, capacity);
+		}
+		int node = size++;
+		parent[node] = parentNode;
+		firstChild[node] = size;
+		childCount[node] = 0;
+		weight[node] = branches.get(branchIndex).getUncertaintyWeight();
+		branch[node] = branchIndex;
+
+		String branchID = branches.get(branchIndex).getBranchID();
+		List<Integer> nodes = leafNodes.get(branchID);
+		if (nodes == null) {
+			nodes = new ArrayList<Integer>();
+			leafNodes.put(branchID, nodes);
+		}
+		nodes.add(node);
+	}
+
+	private int getBranchIndex(LogicTreeNode data) {
+		Integer index = dictionary.get(data);
+		if (index == null) {
+			index = branches.size();
+			dictionary.put(data, index);
+			branches.add(data);
+		}
+		return index;
+	}
+}
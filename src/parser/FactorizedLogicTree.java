@@ -0,0 +1,127 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Factorized representation of a logic tree, as a sequence of factors whose
+ * paths are combined in all possible ways.
+ * 
+ * A branch set applied to ALL the branches adds a copy of the same branches
+ * under every leaf node, so the number of nodes grows as the product of the
+ * number of branches of each branching level. Each such branch set starts a
+ * new factor, stored once as a {@link CompactLogicTree} whose root is a
+ * virtual node (not part of the logic tree paths) and whose children are the
+ * branches. Branch sets applied to some branchIDs only can only be applied to
+ * the leaf nodes of the last factor (all the other nodes have children), and
+ * are applied to it: the explicit tree is therefore kept only for the levels
+ * that are not symmetric. The first factor contains the root of the logic
+ * tree.
+ * 
+ * A path of the logic tree is the root of the first factor followed by the
+ * nodes of one path of each factor (virtual roots excluded). For a symmetric
+ * logic tree each factor has a single branching level, and the memory needed
+ * is proportional to the sum of the number of branches of each level. Paths,
+ * weights and samples are computed from the factors by
+ * {@link utils.LogicTreeProduct#LogicTreeProduct(FactorizedLogicTree)}.
+ */
+public class FactorizedLogicTree {
+
+	private final List<CompactLogicTree> factors;
+
+	FactorizedLogicTree(List<CompactLogicTree> factors) {
+		this.factors = Collections.unmodifiableList(factors);
+	}
+
+	/**
+	 * Returns the number of factors.
+	 */
+	public int getNumberOfFactors() {
+		return factors.size();
+	}
+
+	/**
+	 * Returns the factors. The root of the first factor is the root of the
+	 * logic tree, while the roots of the other factors are virtual nodes.
+	 */
+	public List<CompactLogicTree> getFactors() {
+		return factors;
+	}
+
+	/**
+	 * Returns true if the logic tree is symmetric, that is if every factor
+	 * after the first has a single branching level.
+	 */
+	public boolean isSymmetric() {
+		if (factors.get(0).getNumberOfNodes() > 1) {
+			return false;
+		}
+		for (int k = 1; k < factors.size(); k++) {
+			CompactLogicTree factor = factors.get(k);
+			if (factor.getNumberOfLeafNodes() != factor.getNumberOfNodes() - 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of nodes of the explicit logic tree.
+	 * 
+	 * @throws ArithmeticException
+	 *             if the number of nodes does not fit in a long
+	 */
+	public long getNumberOfExpandedNodes() {
+		long nodes = factors.get(0).getNumberOfNodes();
+		long leaves = factors.get(0).getNumberOfLeafNodes();
+		for (int k = 1; k < factors.size(); k++) {
+			CompactLogicTree factor = factors.get(k);
+			nodes = Math.addExact(nodes, Math.multiplyExact(leaves,
+					factor.getNumberOfNodes() - 1));
+			leaves = Math.multiplyExact(leaves, factor.getNumberOfLeafNodes());
+		}
+		return nodes;
+	}
+
+	/**
+	 * Builds the explicit logic tree, the same returned by
+	 * {@link LogicTreeParser#parse()}. Nodes with equal data share the same
+	 * {@link LogicTreeNode} instance.
+	 */
+	public Tree<LogicTreeNode> toTree() {
+		Tree<LogicTreeNode> tree = factors.get(0).toTree();
+		List<Node<LogicTreeNode>> leafNodes = tree.getLeafNodes();
+		for (int k = 1; k < factors.size(); k++) {
+			CompactLogicTree factor = factors.get(k);
+			List<Node<LogicTreeNode>> newLeafNodes = new ArrayList<Node<LogicTreeNode>>();
+			for (Node<LogicTreeNode> leafNode : leafNodes) {
+				for (int c = 0; c < factor.getNumberOfChildren(factor.getRoot()); c++) {
+					leafNode.addChild(copy(factor, factor.getChild(
+							factor.getRoot(), c), newLeafNodes));
+				}
+			}
+			leafNodes = newLeafNodes;
+		}
+		return tree;
+	}
+
+	/**
+	 * Returns a copy of the subtree of a factor rooted at the given node, and
+	 * adds its leaf nodes to leafNodes.
+	 */
+	private static Node<LogicTreeNode> copy(CompactLogicTree factor, int node,
+			List<Node<LogicTreeNode>> leafNodes) {
+		Node<LogicTreeNode> copy = new Node<LogicTreeNode>(factor.getData(node));
+		if (factor.isLeaf(node)) {
+			leafNodes.add(copy);
+		}
+		for (int c = 0; c < factor.getNumberOfChildren(node); c++) {
+			copy.addChild(copy(factor, factor.getChild(node, c), leafNodes));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,42 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link FactorizedLogicTree} from the branch sets read by the
+ * parser: a branch set applied to ALL the branches starts a new factor, while
+ * the other branch sets are added to the last factor.
+ */
+class FactorizedLogicTreeBuilder implements BranchSetBuilder {
+
+	private final List<CompactLogicTreeBuilder> factors = new ArrayList<CompactLogicTreeBuilder>();
+
+	public FactorizedLogicTreeBuilder(LogicTreeNode root) {
+		factors.add(new CompactLogicTreeBuilder(root));
+	}
+
+	public void addBranchSet(List<String> applyToBranches,
+			List<LogicTreeNode> branchSet) {
+		if (branchSet.isEmpty()) {
+			return;
+		}
+		if (applyToBranches.contains(LogicTreeParser.ALL)) {
+			// the virtual root has weight 1 and no branchID
+			factors.add(new CompactLogicTreeBuilder(new LogicTreeNode()));
+		}
+		factors.get(factors.size() - 1).addBranchSet(applyToBranches,
+				branchSet);
+	}
+
+	/**
+	 * Returns the logic tree built so far.
+	 */
+	public FactorizedLogicTree build() {
+		List<CompactLogicTree> trees = new ArrayList<CompactLogicTree>();
+		for (CompactLogicTreeBuilder factor : factors) {
+			trees.add(factor.build());
+		}
+		return new FactorizedLogicTree(trees);
+	}
+}
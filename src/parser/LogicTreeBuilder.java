@@ -0,0 +1,111 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Keeps track of the leaf nodes of a logic tree while it is built by the
+ * parser.
+ *
+ * The current leaf nodes (the 'frontier' of the tree) are indexed by branchID,
+ * so that the leaf nodes a branch set applies to are found without walking the
+ * tree built so far. Adding a child to a leaf node through
+ * {@link #addChild(Node, Node)} updates the index, so that attaching a branch
+ * set only touches the leaf nodes it applies to, and the time needed to build
+ * the tree is linear in the number of nodes.
+ */
+class LogicTreeBuilder implements BranchSetBuilder {
+
+	private final Tree<LogicTreeNode> logicTree;
+
+	// current leaf nodes indexed by branchID
+	private final Map<String, Set<Node<LogicTreeNode>>> leafNodes;
+
+	public LogicTreeBuilder(Tree<LogicTreeNode> logicTree) {
+		this.logicTree = logicTree;
+		this.leafNodes = new LinkedHashMap<String, Set<Node<LogicTreeNode>>>();
+		Iterator<Node<LogicTreeNode>> i = logicTree.leafIterator();
+		while (i.hasNext()) {
+			addLeafNode(i.next());
+		}
+	}
+
+	public Tree<LogicTreeNode> getLogicTree() {
+		return logicTree;
+	}
+
+	/**
+	 * Returns the current leaf nodes a branch set applies to, that is all the
+	 * leaf nodes if applyToBranches contains ALL, or the leaf nodes whose
+	 * branchID is among the IDs listed in applyToBranches.
+	 */
+	public List<Node<LogicTreeNode>> getLeafNodes(List<String> applyToBranches) {
+		List<Node<LogicTreeNode>> nList = new ArrayList<Node<LogicTreeNode>>();
+		if (applyToBranches.contains(LogicTreeParser.ALL)) {
+			for (Set<Node<LogicTreeNode>> nodes : leafNodes.values()) {
+				nList.addAll(nodes);
+			}
+		} else {
+			Set<String> branchIDs = new LinkedHashSet<String>(applyToBranches);
+			for (String branchID : branchIDs) {
+				Set<Node<LogicTreeNode>> nodes = leafNodes.get(branchID);
+				if (nodes != null) {
+					nList.addAll(nodes);
+				}
+			}
+		}
+		return nList;
+	}
+
+	/**
+	 * Attach the branches of a branch set to the current leaf nodes it applies
+	 * to (see {@link #getLeafNodes(List)}).
+	 * 
+	 * The {@link LogicTreeNode} objects describing the branches are immutable,
+	 * so the same instances are shared by all the leaf nodes: only the
+	 * {@link Node} objects wrapping them are created for each leaf node.
+	 */
+	public void addBranchSet(List<String> applyToBranches,
+			List<LogicTreeNode> branches) {
+		for (Node<LogicTreeNode> n : getLeafNodes(applyToBranches)) {
+			for (LogicTreeNode branch : branches) {
+				addChild(n, new Node<LogicTreeNode>(branch));
+			}
+		}
+	}
+
+	/**
+	 * Adds child to a leaf node, and updates the leaf node index.
+	 */
+	public void addChild(Node<LogicTreeNode> leafNode, Node<LogicTreeNode> child) {
+		leafNode.addChild(child);
+		removeLeafNode(leafNode);
+		addLeafNode(child);
+	}
+
+	private void addLeafNode(Node<LogicTreeNode> node) {
+		String branchID = node.getData().getBranchID();
+		Set<Node<LogicTreeNode>> nodes = leafNodes.get(branchID);
+		if (nodes == null) {
+			nodes = new LinkedHashSet<Node<LogicTreeNode>>();
+			leafNodes.put(branchID, nodes);
+		}
+		nodes.add(node);
+	}
+
+	private void removeLeafNode(Node<LogicTreeNode> node) {
+		String branchID = node.getData().getBranchID();
+		Set<Node<LogicTreeNode>> nodes = leafNodes.get(branchID);
+		if (nodes != null && nodes.remove(node) && nodes.isEmpty()) {
+			leafNodes.remove(branchID);
+		}
+	}
+}
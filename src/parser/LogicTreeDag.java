@@ -0,0 +1,418 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Logic tree stored as a directed acyclic graph, where identical subtrees are
+ * stored once.
+ *
+ * Two subtrees are identical if their roots have equal data and their
+ * children are, in the same order, identical subtrees. The graph is built
+ * from the leaves to the root (hash-consing): each node is looked up in a
+ * table keyed by its data and by the identifiers of its children, which are
+ * already unique, so the lookup compares a few integers and not whole
+ * subtrees. A structural hash, combining the hash of the data and the
+ * structural hashes of the children, is computed once for each node. The
+ * table is an open addressing table of node identifiers, and the children of
+ * the node looked up are compared with those stored in the graph, so no
+ * object is allocated for each lookup.
+ *
+ * When the graph is built from a {@link Tree}, nodes are also memoized by
+ * identity, so a subtree shared by several parents (for instance the root of
+ * a logic tree joined to the leaf nodes of another one, see
+ * LogicTreeUtils.joinTrees) is visited once: the time and memory needed are
+ * proportional to the number of {@link Node} objects, and not to the size of
+ * the expanded tree.
+ *
+ * In a logic tree the same branch sets are repeated under many leaf nodes
+ * (for instance the GMPE branch sets under every source model branch), so
+ * the number of distinct subtrees is usually much smaller than the number of
+ * nodes. The number of paths of each distinct subtree is computed once (it is
+ * the same wherever the subtree appears in the tree).
+ *
+ * Nodes are identified by an index, children having smaller indexes than
+ * their parents, the root having the largest index. Objects of this class are
+ * immutable.
+ */
+public class LogicTreeDag {
+
+	private final int root;
+
+	// branch dictionary index and weight of each node
+	private final int[] branch;
+	private final double[] weight;
+	private final LogicTreeNode[] branches;
+
+	// children of node i are childList[childStart[i]] to
+	// childList[childStart[i + 1] - 1]
+	private final int[] childStart;
+	private final int[] childList;
+
+	private final int[] structuralHash;
+
+	private final long[] pathCount;
+
+	/**
+	 * Creates the graph of a logic tree, visiting each {@link Node} object
+	 * once.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the tree is empty
+	 * @throws ArithmeticException
+	 *             if the number of paths does not fit in a long
+	 */
+	public LogicTreeDag(Tree<LogicTreeNode> tree) {
+		this(new Interner().add(tree));
+	}
+
+	/**
+	 * Creates the graph of a logic tree.
+	 *
+	 * @throws ArithmeticException
+	 *             if the number of paths does not fit in a long
+	 */
+	public LogicTreeDag(CompactLogicTree tree) {
+		this(new Interner().add(tree));
+	}
+
+	LogicTreeDag(Interner interner) {
+		int size = interner.size;
+		root = interner.root;
+		branches = interner.branches.toArray(new LogicTreeNode[interner.branches
+				.size()]);
+		branch = Arrays.copyOf(interner.branch, size);
+		structuralHash = Arrays.copyOf(interner.hash, size);
+		childStart = Arrays.copyOf(interner.childStart, size + 1);
+		childList = Arrays.copyOf(interner.childList, interner.numEdges);
+		weight = new double[size];
+		pathCount = new long[size];
+		for (int i = 0; i < size; i++) {
+			weight[i] = branches[branch[i]].getUncertaintyWeight();
+			if (isLeaf(i)) {
+				pathCount[i] = 1;
+			} else {
+				for (int e = childStart[i]; e < childStart[i + 1]; e++) {
+					pathCount[i] = Math.addExact(pathCount[i],
+							pathCount[childList[e]]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the root node.
+	 */
+	public int getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the number of nodes, that is of distinct subtrees.
+	 */
+	public int getNumberOfNodes() {
+		return branch.length;
+	}
+
+	/**
+	 * Returns the number of children of a node.
+	 */
+	public int getNumberOfChildren(int node) {
+		return childStart[node + 1] - childStart[node];
+	}
+
+	/**
+	 * Returns the index of the k-th child of a node.
+	 */
+	public int getChild(int node, int k) {
+		if (k < 0 || k >= getNumberOfChildren(node)) {
+			throw new IndexOutOfBoundsException("Node " + node + " has "
+					+ getNumberOfChildren(node) + " children, requested child "
+					+ k);
+		}
+		return childList[childStart[node] + k];
+	}
+
+	/**
+	 * Returns true if the node has no children.
+	 */
+	public boolean isLeaf(int node) {
+		return childStart[node + 1] == childStart[node];
+	}
+
+	/**
+	 * Returns the uncertainty weight of a node.
+	 */
+	public double getWeight(int node) {
+		return weight[node];
+	}
+
+	/**
+	 * Returns the data of a node.
+	 */
+	public LogicTreeNode getData(int node) {
+		return branches[branch[node]];
+	}
+
+	/**
+	 * Returns the number of distinct branches (node data).
+	 */
+	public int getNumberOfBranches() {
+		return branches.length;
+	}
+
+	/**
+	 * Returns the index of the data of a node among the distinct branches.
+	 */
+	public int getBranchIndex(int node) {
+		return branch[node];
+	}
+
+	/**
+	 * Returns the branch with the given index.
+	 */
+	public LogicTreeNode getBranch(int index) {
+		return branches[index];
+	}
+
+	/**
+	 * Returns the structural hash of the subtree rooted at a node. Identical
+	 * subtrees have the same structural hash.
+	 */
+	public int getStructuralHash(int node) {
+		return structuralHash[node];
+	}
+
+	/**
+	 * Returns the number of logic tree paths.
+	 */
+	public long getNumberOfPaths() {
+		return pathCount[root];
+	}
+
+	/**
+	 * Returns the number of paths of the subtree rooted at a node.
+	 */
+	public long getNumberOfPaths(int node) {
+		return pathCount[node];
+	}
+
+	/**
+	 * Hash-consing table, in which the nodes of a graph are added from the
+	 * leaves to the root.
+	 */
+	static class Interner {
+
+		private static final int INITIAL_CAPACITY = 64;
+
+		// distinct branches, and their index
+		private final List<LogicTreeNode> branches = new ArrayList<LogicTreeNode>();
+		private final Map<LogicTreeNode, Integer> dictionary = new HashMap<LogicTreeNode, Integer>();
+
+		private int size;
+		private int[] branch = new int[INITIAL_CAPACITY];
+		private int[] hash = new int[INITIAL_CAPACITY];
+		private int[] childStart = new int[INITIAL_CAPACITY + 1];
+		private int[] childList = new int[INITIAL_CAPACITY];
+		private int numEdges;
+
+		// open addressing table of node indexes plus one (0 for an empty
+		// slot), with at most one node for two slots
+		private int[] table = new int[2 * INITIAL_CAPACITY];
+
+		// root of the graph (the last node added)
+		private int root = -1;
+
+		/**
+		 * Adds the nodes of a tree, and returns this interner.
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if the tree is empty
+		 */
+		Interner add(Tree<LogicTreeNode> tree) {
+			if (tree.getRootElement() == null) {
+				throw new IllegalArgumentException(
+						"Cannot build the graph of an empty tree");
+			}
+			Map<Node<LogicTreeNode>, Integer> memo = new IdentityHashMap<Node<LogicTreeNode>, Integer>();
+			// post-order traversal with an explicit stack of nodes, with the
+			// index of the next child to visit, and a stack of the indexes in
+			// the graph of the children of the nodes on the stack
+			@SuppressWarnings("unchecked")
+			Node<LogicTreeNode>[] nodes = (Node<LogicTreeNode>[]) new Node<?>[16];
+			int[] childIndex = new int[nodes.length];
+			int[] ids = new int[16];
+			int numIds = 0;
+			int depth = 0;
+			nodes[0] = tree.getRootElement();
+			while (depth >= 0) {
+				Node<LogicTreeNode> node = nodes[depth];
+				int k = childIndex[depth];
+				if (k < node.getNumberOfChildren()) {
+					childIndex[depth] = k + 1;
+					Node<LogicTreeNode> child = node.getChildren().get(k);
+					Integer id = memo.get(child);
+					if (id != null) {
+						if (numIds == ids.length) {
+							ids = Arrays.copyOf(ids, 2 * numIds);
+						}
+						ids[numIds++] = id;
+					} else {
+						depth++;
+						if (depth == nodes.length) {
+							nodes = Arrays.copyOf(nodes, 2 * depth);
+							childIndex = Arrays.copyOf(childIndex, 2 * depth);
+						}
+						nodes[depth] = child;
+						childIndex[depth] = 0;
+					}
+				} else {
+					int count = node.getNumberOfChildren();
+					int id = intern(getBranchIndex(node.getData()), ids,
+							numIds - count, count);
+					memo.put(node, id);
+					numIds = numIds - count;
+					if (numIds == ids.length) {
+						ids = Arrays.copyOf(ids, 2 * numIds);
+					}
+					ids[numIds++] = id;
+					nodes[depth] = null;
+					depth--;
+				}
+			}
+			root = ids[0];
+			return this;
+		}
+
+		/**
+		 * Adds the nodes of a compact tree, and returns this interner.
+		 */
+		Interner add(CompactLogicTree tree) {
+			int n = tree.getNumberOfNodes();
+			int[] branchIndex = new int[tree.getNumberOfBranches()];
+			for (int b = 0; b < branchIndex.length; b++) {
+				branchIndex[b] = getBranchIndex(tree.getBranch(b));
+			}
+			int[] id = new int[n];
+			int[] children = new int[16];
+			// children have larger indexes than their parents in the tree
+			for (int i = n - 1; i >= 0; i--) {
+				int count = tree.getNumberOfChildren(i);
+				if (count > children.length) {
+					children = new int[Math.max(count, 2 * children.length)];
+				}
+				for (int k = 0; k < count; k++) {
+					children[k] = id[tree.getChild(i, k)];
+				}
+				id[i] = intern(branchIndex[tree.getBranchIndex(i)], children,
+						0, count);
+			}
+			root = id[tree.getRoot()];
+			return this;
+		}
+
+		/**
+		 * Sets the root of the graph.
+		 */
+		void setRoot(int root) {
+			this.root = root;
+		}
+
+		/**
+		 * Returns the index of a branch in the dictionary of distinct
+		 * branches, adding it if needed.
+		 */
+		int getBranchIndex(LogicTreeNode data) {
+			Integer index = dictionary.get(data);
+			if (index == null) {
+				index = branches.size();
+				dictionary.put(data, index);
+				branches.add(data);
+			}
+			return index;
+		}
+
+		/**
+		 * Returns the branch with the given index.
+		 */
+		LogicTreeNode getBranch(int index) {
+			return branches.get(index);
+		}
+
+		/**
+		 * Returns the index of the node with the given branch and children
+		 * (children[from] to children[from + count - 1]), adding the node if
+		 * it is not in the graph yet.
+		 */
+		int intern(int branchIndex, int[] children, int from, int count) {
+			int h = branches.get(branchIndex).hashCode();
+			for (int k = 0; k < count; k++) {
+				h = 31 * h + hash[children[from + k]];
+			}
+			int mask = table.length - 1;
+			int slot = (h ^ (h >>> 16)) & mask;
+			while (table[slot] != 0) {
+				int node = table[slot] - 1;
+				if (hash[node] == h && branch[node] == branchIndex
+						&& hasChildren(node, children, from, count)) {
+					return node;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			if (size == branch.length) {
+				branch = Arrays.copyOf(branch, 2 * size);
+				hash = Arrays.copyOf(hash, 2 * size);
+				childStart = Arrays.copyOf(childStart, 2 * size + 1);
+			}
+			if (numEdges + count > childList.length) {
+				childList = Arrays.copyOf(childList, Math.max(numEdges + count,
+						2 * childList.length));
+			}
+			int node = size++;
+			branch[node] = branchIndex;
+			hash[node] = h;
+			childStart[node] = numEdges;
+			System.arraycopy(children, from, childList, numEdges, count);
+			numEdges = numEdges + count;
+			childStart[size] = numEdges;
+			table[slot] = node + 1;
+			if (2 * size > table.length) {
+				rehash();
+			}
+			return node;
+		}
+
+		private boolean hasChildren(int node, int[] children, int from,
+				int count) {
+			if (childStart[node + 1] - childStart[node] != count) {
+				return false;
+			}
+			for (int k = 0; k < count; k++) {
+				if (childList[childStart[node] + k] != children[from + k]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void rehash() {
+			table = new int[2 * table.length];
+			int mask = table.length - 1;
+			for (int node = 0; node < size; node++) {
+				int slot = (hash[node] ^ (hash[node] >>> 16)) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = node + 1;
+			}
+		}
+	}
+}
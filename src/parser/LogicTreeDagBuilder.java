@@ -0,0 +1,122 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link LogicTreeDag} from the branch sets read by the parser.
+ *
+ * The children a leaf node receives from the following branch sets depend
+ * only on its branchID, so all the leaf nodes a branch set applies to get the
+ * same subtree. The branches of each branch set are therefore added once, as
+ * a group of nodes shared by all the leaf nodes the branch set applies to,
+ * and the number of nodes stored while the file is read is the number of
+ * branches in the file, whatever the number of logic tree paths. When the
+ * file has been read, the nodes are hash-consed from the leaves to the root
+ * (children have larger indexes than their parents), so that identical
+ * subtrees found under different branchIDs are also stored once.
+ */
+class LogicTreeDagBuilder implements BranchSetBuilder {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final LogicTreeDag.Interner interner = new LogicTreeDag.Interner();
+
+	private int size;
+	private int[] branch = new int[INITIAL_CAPACITY];
+	// group of children of each node (-1 for a leaf node)
+	private int[] group = new int[INITIAL_CAPACITY];
+
+	// nodes of each group of children
+	private final List<int[]> groups = new ArrayList<int[]>();
+
+	// current leaf nodes indexed by branchID
+	private final Map<String, List<Integer>> leafNodes = new LinkedHashMap<String, List<Integer>>();
+
+	public LogicTreeDagBuilder(LogicTreeNode root) {
+		addNode(interner.getBranchIndex(root));
+	}
+
+	public void addBranchSet(List<String> applyToBranches,
+			List<LogicTreeNode> branchSet) {
+		if (branchSet.isEmpty()) {
+			return;
+		}
+
+		// all the leaf nodes the branch set applies to get children, so they
+		// are removed from the index
+		List<Integer> nList = new ArrayList<Integer>();
+		if (applyToBranches.contains(LogicTreeParser.ALL)) {
+			for (List<Integer> nodes : leafNodes.values()) {
+				nList.addAll(nodes);
+			}
+			leafNodes.clear();
+		} else {
+			for (String branchID : new LinkedHashSet<String>(applyToBranches)) {
+				List<Integer> nodes = leafNodes.remove(branchID);
+				if (nodes != null) {
+					nList.addAll(nodes);
+				}
+			}
+		}
+		if (nList.isEmpty()) {
+			return;
+		}
+
+		int[] children = new int[branchSet.size()];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = addNode(interner.getBranchIndex(branchSet.get(i)));
+		}
+		groups.add(children);
+		for (int n : nList) {
+			group[n] = groups.size() - 1;
+		}
+	}
+
+	/**
+	 * Returns the logic tree built so far.
+	 */
+	public LogicTreeDag build() {
+		int[] id = new int[size];
+		int[] children = new int[16];
+		for (int i = size - 1; i >= 0; i--) {
+			int count = 0;
+			if (group[i] >= 0) {
+				int[] nodes = groups.get(group[i]);
+				count = nodes.length;
+				if (count > children.length) {
+					children = new int[Math.max(count, 2 * children.length)];
+				}
+				for (int k = 0; k < count; k++) {
+					children[k] = id[nodes[k]];
+				}
+			}
+			id[i] = interner.intern(branch[i], children, 0, count);
+		}
+		interner.setRoot(id[0]);
+		return new LogicTreeDag(interner);
+	}
+
+	private int addNode(int branchIndex) {
+		if (size == branch.length) {
+			branch = Arrays.copyOf(branch, 2 * size);
+			group = Arrays.copyOf(group, 2 * size);
+		}
+		int node = size++;
+		branch[node] = branchIndex;
+		group[node] = -1;
+
+		String branchID = interner.getBranch(branchIndex).getBranchID();
+		List<Integer> nodes = leafNodes.get(branchID);
+		if (nodes == null) {
+			nodes = new ArrayList<Integer>();
+			leafNodes.put(branchID, nodes);
+		}
+		nodes.add(node);
+		return node;
+	}
+}
@@ -0,0 +1,159 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+
+/**
+ * SAX content handler building a logic tree while the NRML file is read.
+ *
+ * The handler never builds a document model: the only XML data kept in memory
+ * are the attributes and branches of the &lt;logicTreeBranchSet&gt; element
+ * currently being read, each branch being decoded once into a
+ * {@link LogicTreeNode}. When the branch set element is closed its branches are
+ * passed to a {@link BranchSetBuilder}, which attaches them to the logic tree
+ * following the same rules used by {@link LogicTreeParser#parse()}. Branching
+ * levels are therefore added to the tree one after the other, in the order
+ * they appear in the file.
+ *
+ * Validation errors reported by the underlying parser are rethrown, so that an
+ * invalid file stops the parsing as it does in the dom4j based parser.
+ */
+class LogicTreeHandler extends DefaultHandler {
+
+	private static final String LOGIC_TREE = "logicTree";
+	private static final String LOGIC_TREE_BRANCH_SET = "logicTreeBranchSet";
+	private static final String LOGIC_TREE_BRANCH = "logicTreeBranch";
+
+	private final BranchSetBuilder builder;
+
+	// true when inside a <logicTree> element
+	private boolean inLogicTree;
+
+	// attributes of the branch set currently parsed
+	private String uncertaintyType;
+	private List<String> branchIDs;
+	private String applyToSources;
+	private String applyToSourceType;
+	private String applyToTectonicRegionType;
+
+	// branches of the branch set currently parsed
+	private final List<LogicTreeNode> branches = new ArrayList<LogicTreeNode>();
+
+	// data of the branch currently parsed
+	private String branchID;
+	private String uncertaintyModel;
+	private Double uncertaintyWeight;
+
+	// character data of the uncertaintyModel or uncertaintyWeight element
+	// currently parsed (null when outside of these elements)
+	private StringBuilder text;
+
+	public LogicTreeHandler(BranchSetBuilder builder) {
+		this.builder = builder;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) throws SAXException {
+		String name = getName(localName, qName);
+		if (name.equals(LOGIC_TREE)) {
+			inLogicTree = true;
+		} else if (!inLogicTree) {
+			// skip config and any other element outside a logic tree
+			return;
+		} else if (name.equals(LOGIC_TREE_BRANCH_SET)) {
+			startBranchSet(attributes);
+		} else if (name.equals(LOGIC_TREE_BRANCH)) {
+			branchID = attributes.getValue(LogicTreeParser.BRANCH_ID);
+			uncertaintyModel = null;
+			uncertaintyWeight = null;
+		} else if (name.equals(LogicTreeParser.UNCERTAINTY_MODEL)
+				|| name.equals(LogicTreeParser.UNCERTAINTY_WEIGHT)) {
+			text = new StringBuilder();
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		if (text != null) {
+			text.append(ch, start, length);
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		if (!inLogicTree) {
+			return;
+		}
+		String name = getName(localName, qName);
+		if (name.equals(LOGIC_TREE)) {
+			inLogicTree = false;
+		} else if (name.equals(LogicTreeParser.UNCERTAINTY_MODEL)) {
+			uncertaintyModel = text.toString();
+			text = null;
+		} else if (name.equals(LogicTreeParser.UNCERTAINTY_WEIGHT)) {
+			uncertaintyWeight = Double.valueOf(text.toString());
+			text = null;
+		} else if (name.equals(LOGIC_TREE_BRANCH)) {
+			branches.add(new LogicTreeNode(branchID, uncertaintyType,
+					uncertaintyModel, uncertaintyWeight, applyToSources,
+					applyToSourceType, applyToTectonicRegionType));
+		} else if (name.equals(LOGIC_TREE_BRANCH_SET)) {
+			builder.addBranchSet(branchIDs, branches);
+		}
+	}
+
+	@Override
+	public void error(SAXParseException e) throws SAXException {
+		throw e;
+	}
+
+	@Override
+	public void fatalError(SAXParseException e) throws SAXException {
+		throw e;
+	}
+
+	/**
+	 * Store attributes of a &lt;logicTreeBranchSet&gt; element.
+	 */
+	private void startBranchSet(Attributes attributes) {
+		uncertaintyType = attributes.getValue(LogicTreeParser.UNCERTAINTY_TYPE);
+		applyToSources = getValue(attributes, LogicTreeParser.APPLY_TO_SOURCES);
+		applyToSourceType = getValue(attributes,
+				LogicTreeParser.APPLY_TO_SOURCE_TYPE);
+		applyToTectonicRegionType = getValue(attributes,
+				LogicTreeParser.APPLY_TO_TECTONIC_REGION_TYPE);
+
+		// applyToBranches defaults to ALL in the schema
+		String applyToBranches = attributes
+				.getValue(LogicTreeParser.APPLY_TO_BRANCHES);
+		if (applyToBranches == null) {
+			applyToBranches = LogicTreeParser.ALL;
+		}
+		branchIDs = new ArrayList<String>();
+		StringTokenizer st = new StringTokenizer(applyToBranches);
+		while (st.hasMoreTokens()) {
+			branchIDs.add(st.nextToken());
+		}
+
+		branches.clear();
+	}
+
+	private static String getValue(Attributes attributes, String name) {
+		String value = attributes.getValue(name);
+		return value == null ? "" : value;
+	}
+
+	private static String getName(String localName, String qName) {
+		return localName == null || localName.length() == 0 ? qName
+				: localName;
+	}
+}
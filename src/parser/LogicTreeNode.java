@@ -1,14 +1,20 @@
 package parser;
 
-public class LogicTreeNode {
-
-	private String branchID;
-	private String uncertaintyType;
-	private String uncertaintyModel;
-	private Double uncertaintyWeight;
-	private String applyToSources;
-	private String applyToSourceType;
-	private String applyToTectonicRegionType;
+import tree.Weighted;
+
+/**
+ * Data of a logic tree branch. Objects of this class are immutable, so the same
+ * instance can be shared by all the tree nodes representing the same branch.
+ */
+public class LogicTreeNode implements Weighted {
+
+	private final String branchID;
+	private final String uncertaintyType;
+	private final String uncertaintyModel;
+	private final Double uncertaintyWeight;
+	private final String applyToSources;
+	private final String applyToSourceType;
+	private final String applyToTectonicRegionType;
 
 	public LogicTreeNode() {
 		this.branchID = "";
@@ -41,6 +47,13 @@ public class LogicTreeNode {
 		return uncertaintyWeight;
 	}
 
+	/**
+	 * Returns the uncertainty weight.
+	 */
+	public double getWeight() {
+		return uncertaintyWeight;
+	}
+
 	public String getUncertaintyType() {
 		return uncertaintyType;
 	}
@@ -10,9 +10,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
+import org.xml.sax.InputSource;
 
 import tree.Node;
 import tree.Tree;
@@ -88,16 +92,34 @@ public class LogicTreeParser {
 
 	private final Tree<LogicTreeNode> logicTree;
 
-	private static final String APPLY_TO_BRANCHES = "applyToBranches";
-	private static final String APPLY_TO_SOURCES = "applyToSources";
-	private static final String APPLY_TO_SOURCE_TYPE = "applyToSourceType";
-	private static final String APPLY_TO_TECTONIC_REGION_TYPE = "applyToTectonicRegionType";
-	private static final String BRANCH_ID = "branchID";
-	private static final String UNCERTAINTY_TYPE = "uncertaintyType";
-	private static final String UNCERTAINTY_MODEL = "uncertaintyModel";
-	private static final String UNCERTAINTY_WEIGHT = "uncertaintyWeight";
+	// factory providing the compiled schema (null if the schema is loaded
+	// from the openquake.nrml.schema property at each parse)
+	private final LogicTreeParserFactory factory;
+
+	static final String APPLY_TO_BRANCHES = "applyToBranches";
+	static final String APPLY_TO_SOURCES = "applyToSources";
+	static final String APPLY_TO_SOURCE_TYPE = "applyToSourceType";
+	static final String APPLY_TO_TECTONIC_REGION_TYPE = "applyToTectonicRegionType";
+	static final String BRANCH_ID = "branchID";
+	static final String UNCERTAINTY_TYPE = "uncertaintyType";
+	static final String UNCERTAINTY_MODEL = "uncertaintyModel";
+	static final String UNCERTAINTY_WEIGHT = "uncertaintyWeight";
+	static final String ALL = "ALL";
+
+	private static final String SCHEMA_LANGUAGE = "http://java.sun.com/xml/jaxp/properties/schemaLanguage";
+	private static final String SCHEMA_SOURCE = "http://java.sun.com/xml/jaxp/properties/schemaSource";
+	private static final String XML_SCHEMA = "http://www.w3.org/2001/XMLSchema";
 
 	public LogicTreeParser(String path) {
+		this(path, null);
+	}
+
+	/**
+	 * Creates a parser validating against the schema compiled by the given
+	 * factory. See {@link LogicTreeParserFactory#newParser(String)}.
+	 */
+	LogicTreeParser(String path, LogicTreeParserFactory factory) {
+		this.factory = factory;
 		File xml = new File(path);
 		FileInputStream fileInputStream;
 		try {
@@ -118,27 +140,28 @@ public class LogicTreeParser {
 	 * Reads file and returns logic tree data.
 	 */
 	public Tree<LogicTreeNode> parse() {
-		if (System.getProperty("openquake.nrml.schema") == null)
-			throw new RuntimeException(
-					"Set openquake.nrml.schema property to the NRML schema path");
+		long start = System.nanoTime();
 
-		SAXReader reader = new SAXReader(true);
 		Document doc = null;
 		try {
-			reader.setFeature(
-					"http://apache.org/xml/features/validation/schema", true);
-			reader.setProperty(
-					"http://java.sun.com/xml/jaxp/properties/schemaLanguage",
-					"http://www.w3.org/2001/XMLSchema");
-			reader.setProperty(
-					"http://java.sun.com/xml/jaxp/properties/schemaSource",
-					"file://" + System.getProperty("openquake.nrml.schema"));
+			SAXReader reader;
+			if (factory != null) {
+				reader = new SAXReader(factory.newXMLReader());
+			} else {
+				reader = new SAXReader(true);
+				reader.setFeature(
+						"http://apache.org/xml/features/validation/schema",
+						true);
+				reader.setProperty(SCHEMA_LANGUAGE, XML_SCHEMA);
+				reader.setProperty(SCHEMA_SOURCE, "file://" + getSchemaPath());
+			}
 			doc = reader.read(this.bufferedReader);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 		Element root = doc.getRootElement(); // <nrml> element
 
+		LogicTreeBuilder builder = new LogicTreeBuilder(logicTree);
 		Iterator i = root.elements().iterator();
 		while (i.hasNext()) {
 			Element elem = (Element) i.next();
@@ -148,25 +171,133 @@ public class LogicTreeParser {
 				continue;
 			}
 
-			parseLogicTree(elem, logicTree);
+			parseLogicTree(elem, builder);
+		}
+
+		if (factory != null) {
+			factory.addParseTime(System.nanoTime() - start);
 		}
 		return logicTree;
 	}
 
+	/**
+	 * Reads file in streaming mode and returns logic tree data.
+	 * 
+	 * The file is read with a validating SAX parser, and the logic tree is
+	 * built level by level while the file is read (see
+	 * {@link LogicTreeHandler}). No document model is created, so the memory
+	 * needed is bounded by the size of the logic tree and not by the size of
+	 * the XML file. The returned tree is the same as the one returned by
+	 * {@link #parse()}.
+	 */
+	public Tree<LogicTreeNode> parseStreaming() {
+		parseStreaming(new LogicTreeBuilder(logicTree));
+		return logicTree;
+	}
+
+	/**
+	 * Reads file in streaming mode and returns logic tree data in compact
+	 * form.
+	 * 
+	 * As in {@link #parseStreaming()} no document model is created, and the
+	 * branches are stored directly in a {@link CompactLogicTree}, without
+	 * creating the {@link Tree} and {@link Node} objects.
+	 */
+	public CompactLogicTree parseCompact() {
+		CompactLogicTreeBuilder builder = new CompactLogicTreeBuilder(
+				logicTree.getRootElement().getData());
+		parseStreaming(builder);
+		return builder.build();
+	}
+
+	/**
+	 * Reads file in streaming mode and returns logic tree data in factorized
+	 * form.
+	 * 
+	 * Branch sets applied to ALL the branches are stored once, and not once
+	 * for each leaf node, so for a symmetric logic tree the memory needed is
+	 * proportional to the number of branches in the file and not to the
+	 * number of paths (see {@link FactorizedLogicTree}).
+	 */
+	public FactorizedLogicTree parseFactorized() {
+		FactorizedLogicTreeBuilder builder = new FactorizedLogicTreeBuilder(
+				logicTree.getRootElement().getData());
+		parseStreaming(builder);
+		return builder.build();
+	}
+
+	/**
+	 * Reads file in streaming mode and returns logic tree data as a graph
+	 * where identical subtrees are stored once (see {@link LogicTreeDag}).
+	 * The branches of each branch set are stored once for all the leaf nodes
+	 * the branch set applies to, so the memory needed is proportional to the
+	 * number of branches in the file and not to the number of nodes of the
+	 * expanded tree.
+	 */
+	public LogicTreeDag parseDag() {
+		LogicTreeDagBuilder builder = new LogicTreeDagBuilder(logicTree
+				.getRootElement().getData());
+		parseStreaming(builder);
+		return builder.build();
+	}
+
+	/**
+	 * Reads file with a validating SAX parser, passing the branch sets to the
+	 * given builder.
+	 */
+	private void parseStreaming(BranchSetBuilder builder) {
+		long start = System.nanoTime();
+
+		LogicTreeHandler handler = new LogicTreeHandler(builder);
+		try {
+			SAXParser saxParser;
+			if (factory != null) {
+				saxParser = factory.newSAXParser();
+			} else {
+				SAXParserFactory saxParserFactory = SAXParserFactory
+						.newInstance();
+				saxParserFactory.setNamespaceAware(true);
+				saxParserFactory.setValidating(true);
+				saxParser = saxParserFactory.newSAXParser();
+				saxParser.setProperty(SCHEMA_LANGUAGE, XML_SCHEMA);
+				saxParser.setProperty(SCHEMA_SOURCE, "file://"
+						+ getSchemaPath());
+			}
+			saxParser.parse(new InputSource(this.bufferedReader), handler);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+
+		if (factory != null) {
+			factory.addParseTime(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns the path to the NRML schema, as defined by the
+	 * openquake.nrml.schema property.
+	 */
+	static String getSchemaPath() {
+		String schema = System.getProperty("openquake.nrml.schema");
+		if (schema == null)
+			throw new RuntimeException(
+					"Set openquake.nrml.schema property to the NRML schema path");
+		return schema;
+	}
+
 	/**
 	 * Parse attributes and children of a &lt;logicTree&gt; element.
 	 * 
 	 * @param logicTreeElem
-	 * @param logicTree
+	 * @param builder
 	 */
-	private void parseLogicTree(Element logicTreeElem,
-			Tree<LogicTreeNode> logicTree) {
+	private void parseLogicTree(Element logicTreeElem, LogicTreeBuilder builder) {
 
 		Iterator i = logicTreeElem.elementIterator();
 		while (i.hasNext()) {
 			Element branchingLevel = (Element) i.next();
 
-			parseLogicTreeBranchingLevel(branchingLevel, logicTree);
+			parseLogicTreeBranchingLevel(branchingLevel, builder);
 
 		}
 	}
@@ -175,12 +306,12 @@ public class LogicTreeParser {
 	 * Parse attributes and children of logicTreeBranchingLevel element.
 	 */
 	private void parseLogicTreeBranchingLevel(Element branchingLevel,
-			Tree<LogicTreeNode> logicTree) {
+			LogicTreeBuilder builder) {
 		Iterator i = branchingLevel.elementIterator();
 		while (i.hasNext()) {
 			Element branchSet = (Element) i.next();
 
-			parseLogicTreeBranchSet(branchSet, logicTree);
+			parseLogicTreeBranchSet(branchSet, builder);
 
 		}
 	}
@@ -189,10 +320,10 @@ public class LogicTreeParser {
 	 * Parse attributes and children of a &lt;logicTreeBranchSet&gt; element.
 	 * 
 	 * @param branchSet
-	 * @param logicTree
+	 * @param builder
 	 */
 	private void parseLogicTreeBranchSet(Element branchSet,
-			Tree<LogicTreeNode> logicTree) {
+			LogicTreeBuilder builder) {
 
 		String uncertaintyType = branchSet.attributeValue(UNCERTAINTY_TYPE);
 		String applyToBranches = "";
@@ -219,43 +350,32 @@ public class LogicTreeParser {
 			branchIDs.add(st.nextToken());
 		}
 
-		// get all the current leaf nodes and loop over them.
-		// Add a node to a leaf node only if the applyToBranches attribute is
-		// empty, or if the leaf node's branchID is among the IDs listed in
-		// applyToBranches
-		// flag.
-		List<Node<LogicTreeNode>> nList = logicTree.getLeafNodes();
-		for (Node<LogicTreeNode> n : nList) {
-			// loop over branches
-			Iterator i = branchSet.elementIterator();
-			while (i.hasNext()) {
-				Element logicTreeBranch = (Element) i.next();
-
-				String branchID = logicTreeBranch.attributeValue(BRANCH_ID);
-
-				String uncertaintyModel = (String) logicTreeBranch.element(
-						UNCERTAINTY_MODEL).getData();
-
-				Double uncertaintyWeight = Double
-						.valueOf((String) logicTreeBranch.element(
-								UNCERTAINTY_WEIGHT).getData());
-
-				// create logic tree node
-				LogicTreeNode logicTreeNode = new LogicTreeNode(branchID,
-						uncertaintyType, uncertaintyModel, uncertaintyWeight,
-						applyToSources, applyToSourceType,
-						applyToTectonicRegionType);
-				// create corresponding node
-				Node<LogicTreeNode> node = new Node<LogicTreeNode>(
-						logicTreeNode);
-
-				// add node as a child
-				if (branchIDs.contains("ALL")
-						|| branchIDs.contains(n.getData().getBranchID())) {
-					n.addChild(node);
-				}
-			}
+		// decode the branches once. The same LogicTreeNode objects are then
+		// shared by all the leaf nodes the branch set applies to.
+		List<LogicTreeNode> branches = new ArrayList<LogicTreeNode>();
+		Iterator i = branchSet.elementIterator();
+		while (i.hasNext()) {
+			Element logicTreeBranch = (Element) i.next();
+
+			String branchID = logicTreeBranch.attributeValue(BRANCH_ID);
+
+			String uncertaintyModel = (String) logicTreeBranch.element(
+					UNCERTAINTY_MODEL).getData();
+
+			Double uncertaintyWeight = Double.valueOf((String) logicTreeBranch
+					.element(UNCERTAINTY_WEIGHT).getData());
+
+			// create logic tree node
+			branches.add(new LogicTreeNode(branchID, uncertaintyType,
+					uncertaintyModel, uncertaintyWeight, applyToSources,
+					applyToSourceType, applyToTectonicRegionType));
 		}
 
+		// add the branches to the current leaf nodes the branch set applies
+		// to. These are all the leaf nodes if the applyToBranches attribute is
+		// ALL, or the leaf nodes whose branchID is among the IDs listed in
+		// applyToBranches flag.
+		builder.addBranchSet(branchIDs, branches);
+
 	}
 }
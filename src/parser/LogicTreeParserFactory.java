@@ -0,0 +1,149 @@
+package parser;
+
+import java.io.File;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Creates {@link LogicTreeParser} objects sharing a compiled NRML schema.
+ *
+ * The NRML schema (and all the schemas it imports) is loaded and compiled only
+ * once, when the factory is created. The compiled {@link Schema} is thread
+ * safe, so a single factory can be used to create parsers from several threads
+ * and each parser validates the logic tree file against the shared schema
+ * without reading it again.
+ *
+ * The factory keeps track of the time spent loading the schema and of the
+ * total time spent by the parsers it created reading logic tree files, so
+ * that the two can be compared.
+ */
+public class LogicTreeParserFactory {
+
+	private static final String SCHEMA_FULL_CHECKING = "http://apache.org/xml/features/validation/schema-full-checking";
+
+	private final Schema schema;
+
+	private final SAXParserFactory saxParserFactory;
+
+	// time (in nanoseconds) spent loading and compiling the schema
+	private final long schemaLoadTime;
+
+	// total time (in nanoseconds) spent parsing logic tree files, and number
+	// of parsed files
+	private long parseTime;
+	private int parseCount;
+
+	/**
+	 * Creates a factory using the NRML schema defined by the
+	 * openquake.nrml.schema property.
+	 */
+	public LogicTreeParserFactory() {
+		this(LogicTreeParser.getSchemaPath());
+	}
+
+	/**
+	 * Creates a factory using the NRML schema at the given path.
+	 */
+	public LogicTreeParserFactory(String schemaPath) {
+		long start = System.nanoTime();
+		try {
+			SchemaFactory schemaFactory = SchemaFactory
+					.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			// skip the full schema constraint checking, which is not done by
+			// the validating parser either (some of the NRML content models
+			// do not pass it)
+			schemaFactory.setFeature(SCHEMA_FULL_CHECKING, false);
+			schema = schemaFactory.newSchema(new File(schemaPath));
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		saxParserFactory = SAXParserFactory.newInstance();
+		saxParserFactory.setNamespaceAware(true);
+		saxParserFactory.setSchema(schema);
+		schemaLoadTime = System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns a new parser for the logic tree file at the given path,
+	 * validating against the compiled schema.
+	 */
+	public LogicTreeParser newParser(String path) {
+		return new LogicTreeParser(path, this);
+	}
+
+	/**
+	 * Returns the compiled NRML schema.
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Returns the time (in nanoseconds) spent loading and compiling the NRML
+	 * schema.
+	 */
+	public long getSchemaLoadTime() {
+		return schemaLoadTime;
+	}
+
+	/**
+	 * Returns the total time (in nanoseconds) spent parsing logic tree files
+	 * with parsers created by this factory.
+	 */
+	public synchronized long getParseTime() {
+		return parseTime;
+	}
+
+	/**
+	 * Returns the number of logic tree files parsed with parsers created by
+	 * this factory.
+	 */
+	public synchronized int getParseCount() {
+		return parseCount;
+	}
+
+	/**
+	 * Returns a new SAX parser validating against the compiled schema.
+	 */
+	synchronized SAXParser newSAXParser() throws Exception {
+		return saxParserFactory.newSAXParser();
+	}
+
+	/**
+	 * Returns a new XML reader validating against the compiled schema, and
+	 * stopping at the first validation error.
+	 */
+	XMLReader newXMLReader() throws Exception {
+		XMLReader reader = newSAXParser().getXMLReader();
+		reader.setErrorHandler(new ErrorHandler() {
+			public void warning(SAXParseException e) {
+			}
+
+			public void error(SAXParseException e) throws SAXException {
+				throw e;
+			}
+
+			public void fatalError(SAXParseException e) throws SAXException {
+				throw e;
+			}
+		});
+		return reader;
+	}
+
+	/**
+	 * Records the time (in nanoseconds) spent parsing a logic tree file.
+	 */
+	synchronized void addParseTime(long time) {
+		parseTime = parseTime + time;
+		parseCount = parseCount + 1;
+	}
+}
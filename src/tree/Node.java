@@ -1,18 +1,28 @@
 package tree;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Represents a node of the Tree<T> class. The Node<T> is also a container, and
  * can be thought of as instrumentation to determine the location of the type T
- * in the Tree<T>.
+ * in the Tree<T>. Nodes do not know their parents: see
+ * {@link Tree#getParents(Node)}.
+ * Structural changes are counted by a counter shared by all the nodes
+ * connected to each other (see {@link #getModificationCount()}), so a Tree<T>
+ * knows when the data it caches are out of date by looking at its root
+ * element only.
  * Code taken from: http://sujitpal.blogspot.com/2006/05/java-data-structure-generic-tree.html
  */
 public class Node<T> {
  
     public T data;
     public List<Node<T>> children;
+
+    // counter of the structural changes made to the nodes connected to this
+    // node (null until the node gets a child or is added as a child)
+    private Counter counter;
  
     /**
      * Default ctor.
@@ -34,12 +44,14 @@ public class Node<T> {
      * Return the children of Node<T>. The Tree<T> is represented by a single
      * root Node<T> whose children are represented by a List<Node<T>>. Each of
      * these Node<T> elements in the List can have children. The getChildren()
-     * method will return the children of a Node<T>.
+     * method will return the children of a Node<T>. For a node without
+     * children a shared empty (and immutable) list is returned, so use
+     * addChild() to add children.
      * @return the children of Node<T>
      */
 	public List<Node<T>> getChildren() {
         if (this.children == null) {
-            return new ArrayList<Node<T>>();
+            return Collections.emptyList();
         }
         return this.children;
     }
@@ -51,6 +63,12 @@ public class Node<T> {
      */
     public void setChildren(List<Node<T>> children) {
         this.children = children;
+        if (children != null) {
+            for (Node<T> child : children) {
+                modified(child);
+            }
+        }
+        modified(null);
     }
  
     /**
@@ -74,6 +92,7 @@ public class Node<T> {
             children = new ArrayList<Node<T>>();
         }
         children.add(child);
+        modified(child);
     }
      
     /**
@@ -90,6 +109,7 @@ public class Node<T> {
         } else {
             children.get(index); //just to throw the exception, and stop here
             children.add(index, child);
+            modified(child);
         }
     }
      
@@ -100,6 +120,81 @@ public class Node<T> {
      */
     public void removeChildAt(int index) throws IndexOutOfBoundsException {
         children.remove(index);
+        modified(null);
+    }
+
+    /**
+     * Counts a structural change of this Node<T>. If a child has been added,
+     * the counters of the two nodes are merged first (the counter of the
+     * child is forwarded to the one of this node), so that the trees
+     * containing either of them see the changes made to both. Counters are
+     * not split when children are removed: a removed subtree keeps
+     * invalidating the data cached by the tree it has been removed from.
+     * Takes an amortized constant time.
+     */
+    private void modified(Node<T> child) {
+        Counter c = getCounter();
+        if (child != null) {
+            if (child.counter == null) {
+                child.counter = c;
+            } else {
+                Counter other = child.getCounter();
+                if (other != c) {
+                    // the count seen through the merged counter must be
+                    // larger than the one it had
+                    c.count = Math.max(c.count, other.count);
+                    other.next = c;
+                }
+            }
+        }
+        c.count++;
+    }
+
+    /**
+     * Returns the counter of this Node<T>, creating it if needed, after
+     * following the counters it has been merged into.
+     */
+    private Counter getCounter() {
+        if (counter == null) {
+            counter = new Counter();
+        }
+        Counter c = counter;
+        while (c.next != null) {
+            // path halving
+            if (c.next.next != null) {
+                c.next = c.next.next;
+            }
+            c = c.next;
+        }
+        counter = c;
+        return c;
+    }
+
+    /**
+     * Returns the number of structural changes (children added, inserted,
+     * removed or set) made so far to this Node<T> or to the nodes connected
+     * to it. Changes made modifying the children list directly are not
+     * counted. The nodes of a tree, and of the trees sharing subtrees with
+     * it, share one counter, so a change made to a subtree shared by several
+     * trees is seen by all of them, and changes made to unrelated trees are
+     * not. Used by Tree<T> to know when its cached data are out of date.
+     * @return the number of structural changes.
+     */
+    public long getModificationCount() {
+        return counter == null ? 0 : getCounter().count;
+    }
+
+    /**
+     * Structural change counter, shared by connected nodes. Counters are
+     * merged as in a union-find structure: a merged counter forwards to the
+     * counter it has been merged into.
+     */
+    private static final class Counter {
+
+        long count;
+
+        // counter this one has been merged into (null if none)
+        Counter next;
     }
  
     public T getData() {
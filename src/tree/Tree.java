@@ -1,7 +1,10 @@
 package tree;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -11,13 +14,30 @@ import java.util.Map;
  * restriction on the number of children that a particular node may have. This
  * Tree provides a method to serialize the Tree into a List by doing a pre-order
  * traversal. It has several methods to allow easy updation of Nodes in the
- * Tree. Code taken from:
+ * Tree. Traversals (see {@link #preOrderIterator()},
+ * {@link #postOrderIterator()}, {@link #leafIterator()} and
+ * {@link #accept(TreeVisitor)}) are iterative, and do not build intermediate
+ * lists. The number of nodes, the depth, the list of nodes, the leaf nodes
+ * and the nodes of each level are computed when first requested, and cached
+ * until the structure of the tree is changed (through the root element or the
+ * methods of Node<T>, see {@link #getModificationCount()}), so repeated
+ * queries on a tree that has not changed take a constant time. Cached lists
+ * are returned as unmodifiable views. In the same way, the parents, depth,
+ * number of paths from the root element and prefix weight of the nodes (see
+ * {@link #getDepth(Node)}) are computed in a parent index, built only if
+ * requested, which handles nodes shared by several parents. Code taken from:
  * http://sujitpal.blogspot.com/2006/05/java-data-structure-generic-tree.html
  */
 public class Tree<T> {
 
 	private Node<T> rootElement;
 
+	// data computed from the tree structure (null if not computed yet)
+	private volatile Structure<T> structure;
+
+	// parents of the nodes (null if not computed yet)
+	private volatile ParentIndex<T> parentIndex;
+
 	/**
 	 * Default ctor.
 	 */
@@ -42,18 +62,82 @@ public class Tree<T> {
 	 */
 	public void setRootElement(Node<T> rootElement) {
 		this.rootElement = rootElement;
+		this.structure = null;
+		this.parentIndex = null;
+	}
+
+	/**
+	 * Returns the number of structural changes made to the tree, that is to
+	 * the nodes connected to the root element (see
+	 * {@link Node#getModificationCount()}), or 0 for an empty tree. The count
+	 * is not changed when the root element is replaced.
+	 */
+	public long getModificationCount() {
+		Node<T> root = rootElement;
+		return root == null ? 0 : root.getModificationCount();
 	}
 
 	/**
 	 * Returns the Tree<T> as a List of Node<T> objects. The elements of the
-	 * List are generated from a pre-order traversal of the tree.
+	 * List are generated from a pre-order traversal of the tree. The list is
+	 * cached until the tree is changed, and cannot be modified.
 	 * 
 	 * @return a List<Node<T>>.
 	 */
 	public List<Node<T>> toList() {
-		List<Node<T>> list = new ArrayList<Node<T>>();
-		walk(rootElement, list);
-		return list;
+		return getStructure().getNodes(this);
+	}
+
+	/**
+	 * Returns the number of nodes in the Tree. The number is cached until the
+	 * tree is changed.
+	 */
+	public int getNumberOfNodes() {
+		return getStructure().getNumberOfNodes(this);
+	}
+
+	/**
+	 * Returns the depth of the Tree, that is the number of edges from the root
+	 * element to the deepest node (-1 for an empty tree). The depth is cached
+	 * until the tree is changed.
+	 */
+	public int getDepth() {
+		return getStructure().getDepth(this);
+	}
+
+	/**
+	 * Returns the nodes at the given depth (the root element being at depth
+	 * 0), in pre-order. Levels are computed one after the other, from the
+	 * children of the nodes of the previous level, up to the level requested
+	 * only, and cached until the tree is changed. The list cannot be
+	 * modified.
+	 */
+	public List<Node<T>> getNodesAtLevel(int level) {
+		return getStructure().getNodesAtLevel(this, level);
+	}
+
+	/**
+	 * Returns an iterator over the nodes of the Tree in pre-order (each node
+	 * before its children), the order of {@link #toList()}.
+	 */
+	public Iterator<Node<T>> preOrderIterator() {
+		return new TreeIterator<T>(rootElement, TreeIterator.Order.PRE_ORDER);
+	}
+
+	/**
+	 * Returns an iterator over the nodes of the Tree in post-order (each node
+	 * after its children).
+	 */
+	public Iterator<Node<T>> postOrderIterator() {
+		return new TreeIterator<T>(rootElement, TreeIterator.Order.POST_ORDER);
+	}
+
+	/**
+	 * Returns an iterator over the leaf nodes of the Tree, in the order of
+	 * {@link #getLeafNodes()}.
+	 */
+	public Iterator<Node<T>> leafIterator() {
+		return new TreeIterator<T>(rootElement, TreeIterator.Order.LEAVES);
 	}
 
 	/**
@@ -67,34 +151,392 @@ public class Tree<T> {
 	}
 
 	/**
-	 * Walks the Tree in pre-order style. This is a recursive method, and is
-	 * called from the toList() method with the root element as the first
-	 * argument. It appends to the second argument, which is passed by reference
-	 * * as it recurses down the tree.
+	 * Walks the Tree in pre-order style, calling the visitor for each node.
+	 * The walk uses an explicit stack, so that deep trees do not overflow the
+	 * call stack.
 	 * 
-	 * @param element
-	 *            the starting element.
-	 * @param list
-	 *            the output of the walk.
+	 * @param visitor
+	 *            the visitor called for each node.
 	 */
-	private void walk(Node<T> element, List<Node<T>> list) {
-		list.add(element);
-		for (Node<T> data : element.getChildren()) {
-			walk(data, list);
+	public void accept(TreeVisitor<T> visitor) {
+		if (rootElement == null) {
+			return;
+		}
+		// nodes from the root to the current node, and index of each node
+		// among its siblings
+		List<Node<T>> path = new ArrayList<Node<T>>();
+		int[] childIndex = new int[16];
+		path.add(rootElement);
+		while (!path.isEmpty()) {
+			int depth = path.size() - 1;
+			Node<T> node = path.get(depth);
+			visitor.visit(node, depth);
+			if (node.getNumberOfChildren() > 0) {
+				if (depth + 1 == childIndex.length) {
+					childIndex = Arrays.copyOf(childIndex, 2 * childIndex.length);
+				}
+				childIndex[depth + 1] = 0;
+				path.add(node.getChildren().get(0));
+				continue;
+			}
+			// move to the next sibling of the node, or of its closest
+			// ancestor having one
+			while (!path.isEmpty()) {
+				int d = path.size() - 1;
+				int index = childIndex[d] + 1;
+				path.remove(d);
+				if (d > 0 && index < path.get(d - 1).getNumberOfChildren()) {
+					childIndex[d] = index;
+					path.add(path.get(d - 1).getChildren().get(index));
+					break;
+				}
+			}
 		}
 	}
 
 	/**
 	 * Added by DM. Return list of nodes without children, that is leaf-nodes.
+	 * The list is cached until the tree is changed, and cannot be modified.
 	 */
 	public List<Node<T>> getLeafNodes() {
-		List<Node<T>> leafNodeList = new ArrayList<Node<T>>();
-		for (Node<T> node : toList()) {
-			if (node.getChildren().isEmpty()) {
-				leafNodeList.add(node);
+		return getStructure().getLeafNodes(this);
+	}
+
+	/**
+	 * Returns the nodes having the given node as child in the Tree (none for
+	 * the root element, several for a node in a subtree shared by several
+	 * nodes, as in a tree returned by LogicTreeUtils.joinTrees), following
+	 * the order of the children lists. The list cannot be modified. See
+	 * {@link #getDepth(Node)} for the parent index used.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the node is not in the Tree.
+	 */
+	public List<Node<T>> getParents(Node<T> node) {
+		return getNodeInfo(node).parents;
+	}
+
+	/**
+	 * Returns the depth of the given node in the Tree, that is the number of
+	 * edges from the root element to the node, or -1 if the node is in a
+	 * shared subtree reached from the root element at several depths.
+	 * 
+	 * Nodes do not know their parents: the parents, depth, number of paths
+	 * from the root element and prefix weight of all the nodes are computed
+	 * in a parent index when one of them is first requested, with a single
+	 * traversal visiting shared subtrees once, and cached until the tree is
+	 * changed. Queries then take a constant time, and
+	 * {@link #getPathFromRoot(Node)} a time proportional to the depth of the
+	 * node. Trees on which none of these methods is called do not build the
+	 * index.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the node is not in the Tree.
+	 */
+	public int getDepth(Node<T> node) {
+		return getNodeInfo(node).depth;
+	}
+
+	/**
+	 * Returns the number of paths from the root element to the given node (1
+	 * for a node outside shared subtrees, 0 if the node is not in the Tree).
+	 * The number saturates at {@link Long#MAX_VALUE}. See
+	 * {@link #getDepth(Node)} for the parent index used.
+	 */
+	public long getNumberOfPathsFromRoot(Node<T> node) {
+		NodeInfo<T> info = getParentIndex().get(node);
+		return info == null ? 0 : info.numberOfPaths;
+	}
+
+	/**
+	 * Returns the sum, over the paths from the root element to the given
+	 * node, of the products of the weights of the nodes on the path (root
+	 * element and node included), the weight of a node being the weight of
+	 * its data if they are {@link Weighted}, 1 otherwise (0 if the node is not
+	 * in the Tree). For a node reached by a single path this is the weight of
+	 * the path. See {@link #getDepth(Node)} for the parent index used.
+	 */
+	public double getPrefixWeight(Node<T> node) {
+		NodeInfo<T> info = getParentIndex().get(node);
+		return info == null ? 0 : info.prefixWeight;
+	}
+
+	/**
+	 * Returns the nodes from the root element to the given node, following
+	 * the parents of the nodes (see {@link #getParents(Node)}), in a time
+	 * proportional to the depth of the node once the parent index has been
+	 * built.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the node is not in the Tree, or is reached from the root
+	 *             element by several paths (see
+	 *             {@link #getNumberOfPathsFromRoot(Node)}).
+	 */
+	public List<Node<T>> getPathFromRoot(Node<T> node) {
+		NodeInfo<T> info = getNodeInfo(node);
+		if (info.numberOfPaths != 1) {
+			throw new IllegalArgumentException("Node " + node + " is reached by "
+					+ info.numberOfPaths + " paths from the root element");
+		}
+		List<Node<T>> path = new ArrayList<Node<T>>(info.depth + 1);
+		path.add(node);
+		while (!info.parents.isEmpty()) {
+			// a node reached by a single path has a single parent
+			node = info.parents.get(0);
+			info = getParentIndex().get(node);
+			path.add(node);
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	private NodeInfo<T> getNodeInfo(Node<T> node) {
+		NodeInfo<T> info = getParentIndex().get(node);
+		if (info == null) {
+			throw new IllegalArgumentException("Node " + node
+					+ " is not in the tree");
+		}
+		return info;
+	}
+
+	/**
+	 * Returns the cached parent index, building it again if the tree has been
+	 * changed since it was built.
+	 */
+	private Map<Node<T>, NodeInfo<T>> getParentIndex() {
+		ParentIndex<T> index = parentIndex;
+		if (index == null || index.root != rootElement
+				|| index.modificationCount != getModificationCount()) {
+			index = new ParentIndex<T>(this);
+			parentIndex = index;
+		}
+		return index.nodes;
+	}
+
+	/**
+	 * Returns the cached structure data, computing them again if the tree
+	 * has been changed since they were computed.
+	 */
+	private Structure<T> getStructure() {
+		Structure<T> s = structure;
+		if (s == null || s.root != rootElement
+				|| s.modificationCount != getModificationCount()) {
+			s = new Structure<T>(this);
+			structure = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Data computed from the tree structure, for the root element and the
+	 * modification count of the tree when the object was created. Each item
+	 * is computed when first requested (so lists of nodes are only kept if
+	 * they are used), with a traversal of the tree.
+	 */
+	private static class Structure<T> {
+
+		final Node<T> root;
+		final long modificationCount;
+
+		// number of nodes and depth (numberOfNodes is -1 until computed)
+		private int numberOfNodes = -1;
+		private int depth;
+
+		// nodes in pre-order and leaf nodes (null until computed)
+		private List<Node<T>> nodes;
+		private List<Node<T>> leafNodes;
+
+		// nodes of the levels computed so far
+		private final List<List<Node<T>>> levels = new ArrayList<List<Node<T>>>();
+
+		Structure(Tree<T> tree) {
+			// read before any traversal, so that changes made during a
+			// traversal are detected
+			root = tree.getRootElement();
+			modificationCount = tree.getModificationCount();
+		}
+
+		synchronized int getNumberOfNodes(Tree<T> tree) {
+			computeCounts(tree);
+			return numberOfNodes;
+		}
+
+		synchronized int getDepth(Tree<T> tree) {
+			computeCounts(tree);
+			return depth;
+		}
+
+		synchronized List<Node<T>> getNodes(Tree<T> tree) {
+			if (nodes == null) {
+				nodes = Collections.unmodifiableList(toList(tree
+						.preOrderIterator()));
+			}
+			return nodes;
+		}
+
+		synchronized List<Node<T>> getLeafNodes(Tree<T> tree) {
+			if (leafNodes == null) {
+				leafNodes = Collections.unmodifiableList(toList(tree
+						.leafIterator()));
+			}
+			return leafNodes;
+		}
+
+		synchronized List<Node<T>> getNodesAtLevel(Tree<T> tree, int level) {
+			if (level < 0 || root == null) {
+				return Collections.emptyList();
 			}
+			if (levels.isEmpty()) {
+				levels.add(Collections.singletonList(root));
+			}
+			while (levels.size() <= level) {
+				List<Node<T>> previous = levels.get(levels.size() - 1);
+				if (previous.isEmpty()) {
+					return previous;
+				}
+				List<Node<T>> next = new ArrayList<Node<T>>();
+				for (Node<T> node : previous) {
+					next.addAll(node.getChildren());
+				}
+				levels.add(Collections.unmodifiableList(next));
+			}
+			return levels.get(level);
+		}
+
+		private void computeCounts(Tree<T> tree) {
+			if (numberOfNodes >= 0) {
+				return;
+			}
+			final int[] counts = { 0, -1 };
+			tree.accept(new TreeVisitor<T>() {
+				public void visit(Node<T> node, int depth) {
+					counts[0]++;
+					counts[1] = Math.max(counts[1], depth);
+				}
+			});
+			numberOfNodes = counts[0];
+			depth = counts[1];
+		}
+
+		private static <T> List<Node<T>> toList(Iterator<Node<T>> i) {
+			List<Node<T>> list = new ArrayList<Node<T>>();
+			while (i.hasNext()) {
+				list.add(i.next());
+			}
+			return list;
+		}
+	}
+
+	/**
+	 * Parents, depth, number of paths from the root element and prefix weight
+	 * of the nodes of a tree, for the root element and the modification count
+	 * of the tree when the object was created. Objects of this class are
+	 * immutable.
+	 */
+	private static class ParentIndex<T> {
+
+		final Node<T> root;
+		final long modificationCount;
+		final Map<Node<T>, NodeInfo<T>> nodes = new IdentityHashMap<Node<T>, NodeInfo<T>>();
+
+		ParentIndex(Tree<T> tree) {
+			// read before the traversal, so that changes made during the
+			// traversal are detected
+			root = tree.getRootElement();
+			modificationCount = tree.getModificationCount();
+			if (root == null) {
+				return;
+			}
+
+			// distinct nodes in post-order (each node after its children),
+			// with an explicit stack of nodes and of the index of the next
+			// child to visit, and the parents of each node
+			List<Node<T>> postOrder = new ArrayList<Node<T>>();
+			Map<Node<T>, List<Node<T>>> parents = new IdentityHashMap<Node<T>, List<Node<T>>>();
+			List<Node<T>> stack = new ArrayList<Node<T>>();
+			int[] childIndex = new int[16];
+			stack.add(root);
+			parents.put(root, new ArrayList<Node<T>>(0));
+			while (!stack.isEmpty()) {
+				int depth = stack.size() - 1;
+				Node<T> node = stack.get(depth);
+				int k = childIndex[depth];
+				if (k < node.getNumberOfChildren()) {
+					childIndex[depth] = k + 1;
+					Node<T> child = node.getChildren().get(k);
+					List<Node<T>> childParents = parents.get(child);
+					if (childParents == null) {
+						childParents = new ArrayList<Node<T>>(1);
+						parents.put(child, childParents);
+						if (depth + 1 == childIndex.length) {
+							childIndex = Arrays.copyOf(childIndex,
+									2 * childIndex.length);
+						}
+						childIndex[depth + 1] = 0;
+						stack.add(child);
+					}
+					childParents.add(node);
+				} else {
+					postOrder.add(node);
+					stack.remove(depth);
+				}
+			}
+
+			// parents before their children
+			for (int i = postOrder.size() - 1; i >= 0; i--) {
+				Node<T> node = postOrder.get(i);
+				nodes.put(node, new NodeInfo<T>(node, parents.get(node), nodes));
+			}
+		}
+	}
+
+	/**
+	 * Parents of a node in a tree, and paths from the root element to the
+	 * node, computed from the paths to its parents. Objects of this class are
+	 * immutable.
+	 */
+	private static class NodeInfo<T> {
+
+		final List<Node<T>> parents;
+		// saturating at Long.MAX_VALUE
+		final long numberOfPaths;
+		// -1 if the paths have different lengths
+		final int depth;
+		final double prefixWeight;
+
+		NodeInfo(Node<T> node, List<Node<T>> parents,
+				Map<Node<T>, NodeInfo<T>> nodes) {
+			this.parents = Collections.unmodifiableList(parents);
+			double weight = getWeight(node);
+			if (parents.isEmpty()) {
+				// root element
+				numberOfPaths = 1;
+				depth = 0;
+				prefixWeight = weight;
+				return;
+			}
+			long paths = 0;
+			int d = 0;
+			double prefix = 0;
+			for (Node<T> parent : parents) {
+				NodeInfo<T> info = nodes.get(parent);
+				int parentDepth = info.depth < 0 ? -1 : info.depth + 1;
+				d = paths == 0 || d == parentDepth ? parentDepth : -1;
+				paths = paths + info.numberOfPaths;
+				if (paths < 0) {
+					paths = Long.MAX_VALUE;
+				}
+				prefix = prefix + info.prefixWeight;
+			}
+			numberOfPaths = paths;
+			depth = d;
+			prefixWeight = prefix * weight;
+		}
+
+		private static double getWeight(Node<?> node) {
+			Object data = node.getData();
+			return data instanceof Weighted ? ((Weighted) data).getWeight() : 1;
 		}
-		return leafNodeList;
 	}
 //
 //	/**
@@ -0,0 +1,113 @@
+package tree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the nodes of a Tree<T>, in pre-order, in post-order, or over
+ * the leaf nodes only (in the order they are found in both traversals).
+ * 
+ * The traversal uses an explicit stack holding the nodes from the root to the
+ * current node and the index of each node among its siblings, so deep trees
+ * do not overflow the call stack, and no memory is allocated while iterating
+ * (apart from growing the stack when a deeper node is found).
+ */
+class TreeIterator<T> implements Iterator<Node<T>> {
+
+	enum Order {
+		PRE_ORDER, POST_ORDER, LEAVES
+	}
+
+	private final Order order;
+
+	// nodes from the root to the next node to be returned
+	private Object[] nodes = new Object[16];
+
+	// childIndex[i] is the index of nodes[i] in the children of nodes[i-1]
+	private int[] childIndex = new int[16];
+
+	private int size;
+
+	TreeIterator(Node<T> root, Order order) {
+		this.order = order;
+		if (root != null) {
+			push(root, 0);
+			if (order != Order.PRE_ORDER) {
+				descend();
+			}
+		}
+	}
+
+	public boolean hasNext() {
+		return size > 0;
+	}
+
+	public Node<T> next() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		Node<T> node = top();
+		if (order == Order.PRE_ORDER && node.getNumberOfChildren() > 0) {
+			push(node.getChildren().get(0), 0);
+			return node;
+		}
+		// move to the next sibling of the node, or of its closest ancestor
+		// having one
+		while (true) {
+			int index = childIndex[size - 1] + 1;
+			pop();
+			if (size == 0) {
+				break;
+			}
+			Node<T> parent = top();
+			if (index < parent.getNumberOfChildren()) {
+				push(parent.getChildren().get(index), index);
+				if (order != Order.PRE_ORDER) {
+					descend();
+				}
+				break;
+			}
+			if (order == Order.POST_ORDER) {
+				// all the children visited: the parent comes next
+				break;
+			}
+		}
+		return node;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Moves from the top node to its first leaf node.
+	 */
+	private void descend() {
+		Node<T> node = top();
+		while (node.getNumberOfChildren() > 0) {
+			node = node.getChildren().get(0);
+			push(node, 0);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Node<T> top() {
+		return (Node<T>) nodes[size - 1];
+	}
+
+	private void push(Node<T> node, int index) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, 2 * size);
+			childIndex = Arrays.copyOf(childIndex, 2 * size);
+		}
+		nodes[size] = node;
+		childIndex[size] = index;
+		size++;
+	}
+
+	private void pop() {
+		size--;
+		nodes[size] = null;
+	}
+}
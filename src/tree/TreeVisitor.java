@@ -0,0 +1,18 @@
+package tree;
+
+/**
+ * Callback called for each node of a Tree<T> (see
+ * {@link Tree#accept(TreeVisitor)}).
+ */
+public interface TreeVisitor<T> {
+
+	/**
+	 * Visits a node.
+	 * 
+	 * @param node
+	 *            the visited node.
+	 * @param depth
+	 *            the depth of the node (0 for the root element).
+	 */
+	void visit(Node<T> node, int depth);
+}
@@ -0,0 +1,14 @@
+package tree;
+
+/**
+ * Data of a Tree<T> node having a weight, used to compute the weights of the
+ * paths from the root element to a node (see
+ * {@link Tree#getPrefixWeight(Node)}).
+ */
+public interface Weighted {
+
+	/**
+	 * Returns the weight of the node.
+	 */
+	double getWeight();
+}
@@ -0,0 +1,118 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import parser.CompactLogicTree;
+import parser.LogicTreeNode;
+
+/**
+ * A logic tree path stored as the sequence of child indexes followed from the
+ * root node of a {@link CompactLogicTree}: the i-th element is the index of the
+ * node at depth i+1 among the children of the node at depth i.
+ * 
+ * Nodes and weight are obtained from the tree when requested, so a path only
+ * takes an int per branching level, and comparing two paths does not require
+ * comparing node data. See also {@link LogicTreePathRanker}, mapping paths to
+ * long indexes.
+ */
+public class CompactLogicTreePath {
+
+	private final CompactLogicTree tree;
+
+	private final int[] childIndexes;
+
+	public CompactLogicTreePath(CompactLogicTree tree, int[] childIndexes) {
+		this.tree = tree;
+		this.childIndexes = childIndexes;
+	}
+
+	public CompactLogicTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * Returns the number of branching levels crossed by the path.
+	 */
+	public int getDepth() {
+		return childIndexes.length;
+	}
+
+	/**
+	 * Returns the index of the node at depth level+1 among the children of the
+	 * node at depth level.
+	 */
+	public int getChildIndex(int level) {
+		return childIndexes[level];
+	}
+
+	/**
+	 * Returns the index of the node at the given depth (0 is the root node).
+	 */
+	public int getNode(int depth) {
+		int node = tree.getRoot();
+		for (int i = 0; i < depth; i++) {
+			node = tree.getChild(node, childIndexes[i]);
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the index of the last node of the path.
+	 */
+	public int getLeafNode() {
+		return getNode(childIndexes.length);
+	}
+
+	/**
+	 * Returns the product of the weights of the nodes in the path.
+	 */
+	public double getPathWeight() {
+		int node = tree.getRoot();
+		double pathWeight = 1;
+		pathWeight = pathWeight * tree.getWeight(node);
+		for (int i = 0; i < childIndexes.length; i++) {
+			node = tree.getChild(node, childIndexes[i]);
+			pathWeight = pathWeight * tree.getWeight(node);
+		}
+		return pathWeight;
+	}
+
+	/**
+	 * Returns the path as a {@link LogicTreePath}.
+	 */
+	public LogicTreePath toLogicTreePath() {
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>(
+				childIndexes.length + 1);
+		int node = tree.getRoot();
+		nodeList.add(tree.getData(node));
+		for (int i = 0; i < childIndexes.length; i++) {
+			node = tree.getChild(node, childIndexes[i]);
+			nodeList.add(tree.getData(node));
+		}
+		return new LogicTreePath(nodeList, getPathWeight());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CompactLogicTreePath)) {
+			return false;
+		}
+
+		CompactLogicTreePath other = (CompactLogicTreePath) obj;
+
+		return tree == other.tree
+				&& Arrays.equals(childIndexes, other.childIndexes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(childIndexes);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(childIndexes);
+	}
+}
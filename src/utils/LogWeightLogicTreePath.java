@@ -0,0 +1,46 @@
+package utils;
+
+import java.util.List;
+
+import parser.LogicTreeNode;
+
+/**
+ * Logic tree path whose weight is computed in log space (see
+ * {@link WeightArithmetic#COMPENSATED}): nodes added with
+ * {@link #addNode(LogicTreeNode)} add the logarithm of their weight to the
+ * logarithm of the path weight, with a compensated sum. Paths of this class
+ * are only created with {@link WeightArithmetic#COMPENSATED}, so plain paths
+ * do not carry the logarithm of their weight.
+ */
+public class LogWeightLogicTreePath extends LogicTreePath {
+
+	// logarithm of the path weight, and its accumulated rounding error
+	private double logPathWeight;
+	private double logCompensation;
+
+	public LogWeightLogicTreePath(List<LogicTreeNode> path, double pathWeight,
+			double logPathWeight) {
+		super(path, pathWeight);
+		this.logPathWeight = logPathWeight;
+	}
+
+	/**
+	 * Returns the logarithm of the path weight, accurate even when the path
+	 * weight underflows to 0.
+	 */
+	@Override
+	public double getLogPathWeight() {
+		return logPathWeight + logCompensation;
+	}
+
+	@Override
+	public void addNode(LogicTreeNode node) {
+		getPath().add(node);
+		double logWeight = Math.log(node.getUncertaintyWeight());
+		double sum = logPathWeight + logWeight;
+		logCompensation = logCompensation
+				+ WeightArithmetic.sumError(logPathWeight, logWeight, sum);
+		logPathWeight = sum;
+		setPathWeight(Math.exp(logPathWeight + logCompensation));
+	}
+}
@@ -0,0 +1,227 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import parser.LogicTreeDag;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Enumeration, indexing and sampling of the paths of a logic tree stored as a
+ * {@link LogicTreeDag}.
+ * 
+ * The data needed for each node (cumulative weights of its children for
+ * sampling, and the index of the first path of each child for indexing) are
+ * computed once for each distinct subtree, and shared by all the places in
+ * the tree where the subtree appears. Paths, their order and the samples
+ * drawn for a given sequence of random numbers are the same as for the
+ * explicit tree (see {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)} and
+ * {@link LogicTreeSampler}).
+ */
+public class LogicTreeDagPaths implements Iterable<LogicTreePath> {
+
+	private final LogicTreeDag dag;
+
+	// for the e-th child edge of the graph (children of node i have edges
+	// edgeStart[i] to edgeStart[i + 1] - 1): cumulative weight of the child
+	// among its siblings, and number of paths of the previous siblings
+	private final int[] edgeStart;
+	private final double[] cumulativeWeight;
+	private final long[] firstPath;
+
+	public LogicTreeDagPaths(LogicTreeDag dag) {
+		this.dag = dag;
+		int n = dag.getNumberOfNodes();
+		edgeStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			edgeStart[i + 1] = edgeStart[i] + dag.getNumberOfChildren(i);
+		}
+		cumulativeWeight = new double[edgeStart[n]];
+		firstPath = new long[edgeStart[n]];
+		for (int i = 0; i < n; i++) {
+			double p = 0;
+			long paths = 0;
+			for (int k = 0; k < dag.getNumberOfChildren(i); k++) {
+				int child = dag.getChild(i, k);
+				p = p + dag.getWeight(child);
+				cumulativeWeight[edgeStart[i] + k] = p;
+				firstPath[edgeStart[i] + k] = paths;
+				paths = paths + dag.getNumberOfPaths(child);
+			}
+		}
+	}
+
+	public LogicTreeDag getDag() {
+		return dag;
+	}
+
+	/**
+	 * Returns the number of logic tree paths.
+	 */
+	public long getNumberOfPaths() {
+		return dag.getNumberOfPaths();
+	}
+
+	/**
+	 * Returns the path with the given index, paths being indexed in the order
+	 * of {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}.
+	 */
+	public LogicTreePath getPath(long index) {
+		if (index < 0 || index >= dag.getNumberOfPaths()) {
+			throw new IndexOutOfBoundsException("Path index: " + index
+					+ ", number of paths: " + dag.getNumberOfPaths());
+		}
+		int node = dag.getRoot();
+		LogicTreePath path = new LogicTreePath(new ArrayList<LogicTreeNode>(),
+				1);
+		path.addNode(dag.getData(node));
+		while (!dag.isLeaf(node)) {
+			// last child whose first path is not after the index
+			int lo = edgeStart[node];
+			int hi = edgeStart[node + 1] - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (firstPath[mid] <= index) {
+					lo = mid;
+				} else {
+					hi = mid - 1;
+				}
+			}
+			index = index - firstPath[lo];
+			node = dag.getChild(node, lo - edgeStart[node]);
+			path.addNode(dag.getData(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Randomly samples a logic tree path.
+	 */
+	public LogicTreePath samplePath(Random rn) {
+		int node = dag.getRoot();
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
+		nodeList.add(dag.getData(node));
+		LogicTreePath path = new LogicTreePath(nodeList, 1);
+		while (!dag.isLeaf(node)) {
+			node = sampleChild(node, rn.nextDouble());
+			path.addNode(dag.getData(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Randomly samples n logic tree paths.
+	 */
+	public List<LogicTreePath> samplePaths(Random rn, int n) {
+		List<LogicTreePath> logicTreePaths = new ArrayList<LogicTreePath>(n);
+		for (int i = 0; i < n; i++) {
+			logicTreePaths.add(samplePath(rn));
+		}
+		return logicTreePaths;
+	}
+
+	/**
+	 * Returns an iterator over all paths, in the order of
+	 * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}. As in
+	 * {@link LogicTreePathIterator}, only the current path is kept between two
+	 * calls.
+	 */
+	public Iterator<LogicTreePath> iterator() {
+		return new Iterator<LogicTreePath>() {
+
+			// nodes from the root to the current leaf node, index of each
+			// node among its siblings, and products of the weights
+			private int[] nodes = new int[16];
+			private int[] childIndex = new int[16];
+			private double[] pathWeights = new double[16];
+			private int length = 0;
+
+			{
+				push(dag.getRoot(), 0);
+				descend();
+			}
+
+			public boolean hasNext() {
+				return length > 0;
+			}
+
+			public LogicTreePath next() {
+				if (length == 0) {
+					throw new NoSuchElementException();
+				}
+				List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>(
+						length);
+				for (int i = 0; i < length; i++) {
+					nodeList.add(dag.getData(nodes[i]));
+				}
+				LogicTreePath path = new LogicTreePath(nodeList,
+						pathWeights[length - 1]);
+				advance();
+				return path;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private void advance() {
+				while (length > 1) {
+					int index = childIndex[length - 1] + 1;
+					length--;
+					int parent = nodes[length - 1];
+					if (index < dag.getNumberOfChildren(parent)) {
+						push(dag.getChild(parent, index), index);
+						descend();
+						return;
+					}
+				}
+				length = 0;
+			}
+
+			private void descend() {
+				int node = nodes[length - 1];
+				while (!dag.isLeaf(node)) {
+					node = dag.getChild(node, 0);
+					push(node, 0);
+				}
+			}
+
+			private void push(int node, int index) {
+				if (length == nodes.length) {
+					nodes = Arrays.copyOf(nodes, 2 * length);
+					childIndex = Arrays.copyOf(childIndex, 2 * length);
+					pathWeights = Arrays.copyOf(pathWeights, 2 * length);
+				}
+				double parentWeight = length == 0 ? 1
+						: pathWeights[length - 1];
+				nodes[length] = node;
+				childIndex[length] = index;
+				pathWeights[length] = parentWeight * dag.getWeight(node);
+				length++;
+			}
+		};
+	}
+
+	/**
+	 * Returns the first child whose cumulative weight is not smaller than u,
+	 * or the last child if there is none (see {@link LogicTreeSampler}).
+	 */
+	private int sampleChild(int node, double u) {
+		int lo = edgeStart[node];
+		int hi = edgeStart[node + 1] - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cumulativeWeight[mid] >= u) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return dag.getChild(node, lo - edgeStart[node]);
+	}
+}
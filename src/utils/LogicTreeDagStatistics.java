@@ -0,0 +1,131 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import parser.LogicTreeDag;
+import parser.LogicTreeNode;
+
+/**
+ * Statistics of the logic tree paths computed on a {@link LogicTreeDag},
+ * without expanding the shared subtrees.
+ *
+ * As in {@link LogicTreeStatistics}, two quantities are computed for each
+ * node of the graph, with a single pass over the nodes in each direction:
+ *
+ * - the node probability, that is the sum, over the paths from the root to
+ * the node, of the products of the weights of the nodes on the path (computed
+ * from the root to the leaves, parents having larger indexes than their
+ * children). For a subtree appearing several times in the logic tree, this is
+ * the sum of the prefix weights of all its occurrences.
+ *
+ * - the subtree weight, that is the sum, over the paths of the subtree rooted
+ * at the node, of the products of the weights below the node (1 for a leaf
+ * node, computed from the leaves to the root)
+ *
+ * The marginal weight of a node, that is the sum of the weights of the logic
+ * tree paths going through any of its occurrences, is the product of the two.
+ * All quantities are obtained in a time proportional to the number of nodes
+ * and edges of the graph, and not to the size of the expanded tree.
+ */
+public class LogicTreeDagStatistics {
+
+	private final LogicTreeDag dag;
+
+	private final double[] nodeProbability;
+
+	private final double[] subtreeWeight;
+
+	// sum of the marginal weights of the nodes with the same data
+	private final Map<LogicTreeNode, Double> branchWeights;
+
+	public LogicTreeDagStatistics(LogicTreeDag dag) {
+		this.dag = dag;
+		int n = dag.getNumberOfNodes();
+		nodeProbability = new double[n];
+		subtreeWeight = new double[n];
+		nodeProbability[dag.getRoot()] = dag.getWeight(dag.getRoot());
+		// parents have larger indexes than their children
+		for (int i = dag.getRoot(); i >= 0; i--) {
+			for (int k = 0; k < dag.getNumberOfChildren(i); k++) {
+				int child = dag.getChild(i, k);
+				nodeProbability[child] = nodeProbability[child]
+						+ nodeProbability[i] * dag.getWeight(child);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (dag.isLeaf(i)) {
+				subtreeWeight[i] = 1;
+			} else {
+				double weight = 0;
+				for (int k = 0; k < dag.getNumberOfChildren(i); k++) {
+					int child = dag.getChild(i, k);
+					weight = weight + dag.getWeight(child)
+							* subtreeWeight[child];
+				}
+				subtreeWeight[i] = weight;
+			}
+		}
+		double[] weights = new double[dag.getNumberOfBranches()];
+		for (int i = 0; i < n; i++) {
+			weights[dag.getBranchIndex(i)] += getMarginalWeight(i);
+		}
+		branchWeights = new LinkedHashMap<LogicTreeNode, Double>();
+		for (int b = 0; b < weights.length; b++) {
+			branchWeights.put(dag.getBranch(b), weights[b]);
+		}
+	}
+
+	public LogicTreeDag getDag() {
+		return dag;
+	}
+
+	/**
+	 * Returns the number of logic tree paths.
+	 */
+	public long getNumberOfPaths() {
+		return dag.getNumberOfPaths();
+	}
+
+	/**
+	 * Returns the sum of the weights of all logic tree paths (1 for a logic
+	 * tree with valid weights).
+	 */
+	public double getTotalWeight() {
+		return getMarginalWeight(dag.getRoot());
+	}
+
+	/**
+	 * Returns the sum, over the paths from the root to the given node, of the
+	 * products of the weights of the nodes on the path. With valid weights,
+	 * this is the probability that a sampled logic tree path goes through the
+	 * node.
+	 */
+	public double getNodeProbability(int node) {
+		return nodeProbability[node];
+	}
+
+	/**
+	 * Returns the sum, over the paths of the subtree rooted at the given node,
+	 * of the products of the weights below the node.
+	 */
+	public double getSubtreeWeight(int node) {
+		return subtreeWeight[node];
+	}
+
+	/**
+	 * Returns the sum of the weights of the logic tree paths going through
+	 * the given node.
+	 */
+	public double getMarginalWeight(int node) {
+		return nodeProbability[node] * subtreeWeight[node];
+	}
+
+	/**
+	 * Returns the sum of the weights of the paths going through each branch,
+	 * that is through a node containing the branch data.
+	 */
+	public Map<LogicTreeNode, Double> getBranchWeights() {
+		return branchWeights;
+	}
+}
@@ -0,0 +1,185 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import parser.LogicTreeNode;
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Iterator over the logic tree paths in reflected (Gray code) order, so that
+ * consecutive paths differ in as few branching levels as possible.
+ * 
+ * The tree is traversed depth-first, but the children at each depth are
+ * traversed alternately from the first to the last and from the last to the
+ * first: when all the children of a node have been visited, the direction of
+ * traversal at that depth is reversed, and the next path starts from the same
+ * end of the children list where the previous one ended. For a symmetric
+ * logic tree (all the nodes at a given depth having the same children
+ * branches) this is the reflected mixed-radix Gray code: consecutive paths
+ * differ in exactly one branching level. For a non-symmetric tree the same
+ * rule is applied, and consecutive paths usually differ in a few levels.
+ * 
+ * After each call to {@link #next()}, the levels where the returned path
+ * differs from the previous one (that is where the branch data differ) are
+ * given by {@link #hasChanged(int)} and {@link #getFirstChangedLevel()}, so
+ * that work done for the levels not changed can be reused. Level i is the
+ * i-th node of the path, the root node being at level 0.
+ */
+public class LogicTreeGrayCodeIterator implements Iterator<LogicTreePath> {
+
+	// nodes from the root to the current leaf node
+	private final List<Node<LogicTreeNode>> nodes;
+
+	// childIndex[i] is the index of nodes.get(i) in the children of
+	// nodes.get(i-1)
+	private int[] childIndex;
+
+	// pathWeights[i] is the product of the weights of the nodes from the root
+	// to nodes.get(i)
+	private double[] pathWeights;
+
+	// reversed[i] is true if children at depth i are currently traversed from
+	// the last to the first
+	private boolean[] reversed;
+
+	// data of the last path returned, and levels where it differs from the
+	// previous one
+	private LogicTreeNode[] lastPath;
+	private int lastPathLength;
+	private boolean[] changed;
+	private int numLevels;
+	private int firstChangedLevel;
+
+	public LogicTreeGrayCodeIterator(Tree<LogicTreeNode> tree) {
+		nodes = new ArrayList<Node<LogicTreeNode>>();
+		childIndex = new int[16];
+		pathWeights = new double[16];
+		reversed = new boolean[16];
+		lastPath = new LogicTreeNode[16];
+		changed = new boolean[16];
+		firstChangedLevel = -1;
+		if (tree.getRootElement() != null) {
+			push(tree.getRootElement(), 0);
+			descend();
+		}
+	}
+
+	public boolean hasNext() {
+		return !nodes.isEmpty();
+	}
+
+	public LogicTreePath next() {
+		if (nodes.isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		int pathLen = nodes.size();
+		ensureCapacity(pathLen);
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>(pathLen);
+		numLevels = Math.max(pathLen, lastPathLength);
+		firstChangedLevel = -1;
+		for (int i = 0; i < numLevels; i++) {
+			LogicTreeNode data = i < pathLen ? nodes.get(i).getData() : null;
+			changed[i] = data == null || i >= lastPathLength
+					|| !data.equals(lastPath[i]);
+			if (changed[i] && firstChangedLevel < 0) {
+				firstChangedLevel = i;
+			}
+			lastPath[i] = data;
+			if (data != null) {
+				nodeList.add(data);
+			}
+		}
+		lastPathLength = pathLen;
+		LogicTreePath path = new LogicTreePath(nodeList,
+				pathWeights[pathLen - 1]);
+		advance();
+		return path;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns true if the branch at the given level of the last path returned
+	 * differs from the branch at the same level of the previous path (or if
+	 * only one of the two paths reaches that level). All levels are changed
+	 * for the first path.
+	 */
+	public boolean hasChanged(int level) {
+		return level < numLevels && changed[level];
+	}
+
+	/**
+	 * Returns the first level where the last path returned differs from the
+	 * previous path (0 for the first path), or -1 if no path has been
+	 * returned yet or the two paths have equal branches.
+	 */
+	public int getFirstChangedLevel() {
+		return firstChangedLevel;
+	}
+
+	/**
+	 * Moves from the current leaf node to the next one.
+	 */
+	private void advance() {
+		while (true) {
+			int depth = nodes.size() - 1;
+			nodes.remove(depth);
+			if (depth == 0) {
+				return;
+			}
+			Node<LogicTreeNode> parent = nodes.get(depth - 1);
+			int index = childIndex[depth] + (reversed[depth] ? -1 : 1);
+			if (index >= 0 && index < parent.getNumberOfChildren()) {
+				push(parent.getChildren().get(index), index);
+				descend();
+				return;
+			}
+			// all the children traversed: the next ones are traversed in the
+			// opposite direction
+			reversed[depth] = !reversed[depth];
+		}
+	}
+
+	/**
+	 * Moves from the current node to its first leaf node, in the current
+	 * direction of traversal of each depth.
+	 */
+	private void descend() {
+		Node<LogicTreeNode> node = nodes.get(nodes.size() - 1);
+		while (node.getNumberOfChildren() > 0) {
+			int depth = nodes.size();
+			ensureCapacity(depth + 1);
+			int index = reversed[depth] ? node.getNumberOfChildren() - 1 : 0;
+			node = node.getChildren().get(index);
+			push(node, index);
+		}
+	}
+
+	private void push(Node<LogicTreeNode> node, int index) {
+		int depth = nodes.size();
+		ensureCapacity(depth + 1);
+		double parentWeight = depth == 0 ? 1 : pathWeights[depth - 1];
+		nodes.add(node);
+		childIndex[depth] = index;
+		pathWeights[depth] = parentWeight
+				* node.getData().getUncertaintyWeight();
+	}
+
+	private void ensureCapacity(int length) {
+		if (length > childIndex.length) {
+			int capacity = Math.max(length, 2 * childIndex.length);
+			childIndex = Arrays.copyOf(childIndex, capacity);
+			pathWeights = Arrays.copyOf(pathWeights, capacity);
+			reversed = Arrays.copyOf(reversed, capacity);
+			lastPath = Arrays.copyOf(lastPath, capacity);
+			changed = Arrays.copyOf(changed, capacity);
+		}
+	}
+}
@@ -22,6 +22,19 @@ public class LogicTreePath {
 	public double getPathWeight() {
 		return pathWeight;
 	}
+
+	/**
+	 * Returns the logarithm of the path weight (see
+	 * {@link LogWeightLogicTreePath} for paths whose weight is computed in
+	 * log space).
+	 */
+	public double getLogPathWeight() {
+		return Math.log(pathWeight);
+	}
+
+	void setPathWeight(double pathWeight) {
+		this.pathWeight = pathWeight;
+	}
 	
 	public void addNode(LogicTreeNode node){
 		this.path.add(node);
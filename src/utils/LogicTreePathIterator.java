@@ -0,0 +1,184 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import parser.LogicTreeNode;
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Iterator over the logic tree paths, from the root node to each leaf node.
+ * 
+ * Paths are returned in the same order as
+ * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}, that is in the order
+ * the leaf nodes are found in a pre-order traversal of the tree. Each path is
+ * created when {@link #next()} is called. Between two calls the iterator only
+ * keeps the current path (the nodes from the root to the current leaf, the
+ * index of each node among its siblings, and the products of the node weights
+ * along the path), so the memory needed does not depend on the number of
+ * paths.
+ * 
+ * With {@link WeightArithmetic#COMPENSATED} the logarithms of the path
+ * weights, and their rounding errors, are kept along the path instead of the
+ * products, in arrays allocated with the iterator.
+ */
+public class LogicTreePathIterator implements Iterator<LogicTreePath> {
+
+	// nodes from the root to the current leaf node
+	private final List<Node<LogicTreeNode>> nodes;
+
+	// childIndex[i] is the index of nodes.get(i) in the children of
+	// nodes.get(i-1)
+	private int[] childIndex;
+
+	// pathWeights[i] is the product of the weights of the nodes from the root
+	// to nodes.get(i)
+	private double[] pathWeights;
+
+	// logarithms of the path weights and their rounding errors (null if path
+	// weights are not computed in log space)
+	private double[] logWeights;
+	private double[] logCompensations;
+
+	// depth of the root of the subtree being traversed
+	private final int rootDepth;
+
+	public LogicTreePathIterator(Tree<LogicTreeNode> tree) {
+		this(tree, WeightArithmetic.PLAIN);
+	}
+
+	public LogicTreePathIterator(Tree<LogicTreeNode> tree,
+			WeightArithmetic arithmetic) {
+		nodes = new ArrayList<Node<LogicTreeNode>>();
+		childIndex = new int[16];
+		pathWeights = new double[16];
+		initLogWeights(arithmetic);
+		rootDepth = 0;
+		if (tree.getRootElement() != null) {
+			push(tree.getRootElement(), 0);
+			descend();
+		}
+	}
+
+	/**
+	 * Creates an iterator over the paths going through the last node of the
+	 * given path, that is over the paths of the subtree rooted at that node.
+	 * 
+	 * @param subtreePath
+	 *            the nodes from the root of the tree to the root of the
+	 *            subtree
+	 */
+	LogicTreePathIterator(List<Node<LogicTreeNode>> subtreePath,
+			WeightArithmetic arithmetic) {
+		nodes = new ArrayList<Node<LogicTreeNode>>();
+		childIndex = new int[Math.max(16, 2 * subtreePath.size())];
+		pathWeights = new double[childIndex.length];
+		initLogWeights(arithmetic);
+		rootDepth = subtreePath.size() - 1;
+		for (Node<LogicTreeNode> node : subtreePath) {
+			push(node, 0);
+		}
+		descend();
+	}
+
+	public boolean hasNext() {
+		return !nodes.isEmpty();
+	}
+
+	public LogicTreePath next() {
+		if (nodes.isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		int pathLen = nodes.size();
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>(pathLen);
+		for (int i = 0; i < pathLen; i++) {
+			nodeList.add(nodes.get(i).getData());
+		}
+		LogicTreePath path;
+		if (logWeights == null) {
+			path = new LogicTreePath(nodeList, pathWeights[pathLen - 1]);
+		} else {
+			path = new LogWeightLogicTreePath(nodeList,
+					pathWeights[pathLen - 1],
+					logWeights[pathLen - 1] + logCompensations[pathLen - 1]);
+		}
+		advance();
+		return path;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Moves from the current leaf node to the next one.
+	 */
+	private void advance() {
+		while (true) {
+			int depth = nodes.size() - 1;
+			int index = childIndex[depth] + 1;
+			nodes.remove(depth);
+			if (depth == rootDepth) {
+				nodes.clear();
+				return;
+			}
+			Node<LogicTreeNode> parent = nodes.get(depth - 1);
+			if (index < parent.getNumberOfChildren()) {
+				push(parent.getChildren().get(index), index);
+				descend();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Moves from the current node to its first leaf node.
+	 */
+	private void descend() {
+		Node<LogicTreeNode> node = nodes.get(nodes.size() - 1);
+		while (node.getNumberOfChildren() > 0) {
+			node = node.getChildren().get(0);
+			push(node, 0);
+		}
+	}
+
+	private void push(Node<LogicTreeNode> node, int index) {
+		int depth = nodes.size();
+		if (depth == childIndex.length) {
+			childIndex = Arrays.copyOf(childIndex, 2 * depth);
+			pathWeights = Arrays.copyOf(pathWeights, 2 * depth);
+			if (logWeights != null) {
+				logWeights = Arrays.copyOf(logWeights, 2 * depth);
+				logCompensations = Arrays.copyOf(logCompensations, 2 * depth);
+			}
+		}
+		nodes.add(node);
+		childIndex[depth] = index;
+		double weight = node.getData().getUncertaintyWeight();
+		if (logWeights == null) {
+			double parentWeight = depth == 0 ? 1 : pathWeights[depth - 1];
+			pathWeights[depth] = parentWeight * weight;
+		} else {
+			double parentLogWeight = depth == 0 ? 0 : logWeights[depth - 1];
+			double parentCompensation = depth == 0 ? 0
+					: logCompensations[depth - 1];
+			double logWeight = Math.log(weight);
+			double sum = parentLogWeight + logWeight;
+			logWeights[depth] = sum;
+			logCompensations[depth] = parentCompensation
+					+ WeightArithmetic.sumError(parentLogWeight, logWeight, sum);
+			pathWeights[depth] = Math.exp(sum + logCompensations[depth]);
+		}
+	}
+
+	private void initLogWeights(WeightArithmetic arithmetic) {
+		if (arithmetic == WeightArithmetic.COMPENSATED) {
+			logWeights = new double[childIndex.length];
+			logCompensations = new double[childIndex.length];
+		}
+	}
+}
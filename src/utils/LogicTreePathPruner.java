@@ -0,0 +1,107 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import parser.CompactLogicTree;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Enumerates the logic tree paths leaving out the paths with small weights.
+ * 
+ * Two criteria are available:
+ * 
+ * - a weight threshold: subtrees whose prefix weight (the product of the
+ * weights from the root to the subtree root) is below the threshold are
+ * skipped as a whole, without visiting their nodes. Paths are returned in the
+ * same order as {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}.
+ * 
+ * - a coverage target: paths are enumerated in decreasing order of weight (see
+ * {@link LogicTreePathSearch}) until the sum of their weights reaches the
+ * given fraction of the total weight. This gives the smallest set of paths
+ * covering the target.
+ * 
+ * In both cases the weight of the paths left out is computed exactly from the
+ * {@link LogicTreeStatistics} of the tree, and reported with the paths.
+ */
+public class LogicTreePathPruner {
+
+	private final CompactLogicTree tree;
+
+	private final LogicTreeStatistics statistics;
+
+	public LogicTreePathPruner(Tree<LogicTreeNode> tree) {
+		this(new CompactLogicTree(tree));
+	}
+
+	public LogicTreePathPruner(CompactLogicTree tree) {
+		this.tree = tree;
+		this.statistics = new LogicTreeStatistics(tree);
+	}
+
+	/**
+	 * Returns the paths going only through nodes with prefix weight not
+	 * smaller than minPrefixWeight.
+	 */
+	public PrunedLogicTreePaths pruneByWeight(double minPrefixWeight) {
+		if (minPrefixWeight < 0) {
+			throw new IllegalArgumentException(
+					"Weight threshold must be non-negative: " + minPrefixWeight);
+		}
+		List<LogicTreePath> paths = new ArrayList<LogicTreePath>();
+		double coveredWeight = 0;
+		double prunedWeight = 0;
+
+		// depth-first traversal, children are pushed in reverse order so that
+		// they are visited in their order
+		int[] stack = new int[tree.getNumberOfNodes()];
+		int size = 0;
+		stack[size++] = tree.getRoot();
+		while (size > 0) {
+			int node = stack[--size];
+			if (statistics.getPrefixWeight(node) < minPrefixWeight) {
+				prunedWeight = prunedWeight + statistics.getMarginalWeight(node);
+			} else if (tree.isLeaf(node)) {
+				LogicTreePath path = toLogicTreePath(node);
+				paths.add(path);
+				coveredWeight = coveredWeight + path.getPathWeight();
+			} else {
+				for (int k = tree.getNumberOfChildren(node) - 1; k >= 0; k--) {
+					stack[size++] = tree.getChild(node, k);
+				}
+			}
+		}
+		return new PrunedLogicTreePaths(paths, coveredWeight, coveredWeight
+				+ prunedWeight);
+	}
+
+	/**
+	 * Returns the heaviest paths, in decreasing order of weight, whose weights
+	 * sum to at least the given fraction of the total weight.
+	 */
+	public PrunedLogicTreePaths pruneByCoverage(double coverage) {
+		if (coverage < 0 || coverage > 1) {
+			throw new IllegalArgumentException(
+					"Coverage must be between 0 and 1: " + coverage);
+		}
+		double totalWeight = statistics.getTotalWeight();
+		List<LogicTreePath> paths = new ArrayList<LogicTreePath>();
+		double coveredWeight = 0;
+		LogicTreePathSearch search = new LogicTreePathSearch(tree);
+		while (coveredWeight < coverage * totalWeight && search.hasNext()) {
+			LogicTreePath path = search.next();
+			paths.add(path);
+			coveredWeight = coveredWeight + path.getPathWeight();
+		}
+		return new PrunedLogicTreePaths(paths, coveredWeight, totalWeight);
+	}
+
+	private LogicTreePath toLogicTreePath(int leafNode) {
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
+		for (int node = leafNode; node >= 0; node = tree.getParent(node)) {
+			nodeList.add(0, tree.getData(node));
+		}
+		return new LogicTreePath(nodeList, statistics.getPrefixWeight(leafNode));
+	}
+}
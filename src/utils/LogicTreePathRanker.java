@@ -0,0 +1,145 @@
+package utils;
+
+import parser.CompactLogicTree;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Maps the logic tree paths to dense integer indexes (ranks) and back.
+ * 
+ * Paths are ranked in the order of
+ * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}: the first path has
+ * index 0 and the last path has index {@link #getNumberOfPaths()} - 1. For each
+ * node, the number of paths going through it and the index of the first of
+ * these paths are computed once, when the ranker is created. Then
+ * {@link #rank(CompactLogicTreePath)} sums, at each branching level, the
+ * number of paths of the preceding siblings, and {@link #unrank(long)} selects
+ * at each branching level the child containing the requested index (with a
+ * binary search over the children). Both take a time proportional to the path
+ * length, and no node list is created.
+ */
+public class LogicTreePathRanker {
+
+	private final CompactLogicTree tree;
+
+	// number of paths going through each node
+	private final long[] pathCount;
+
+	// index of the first path going through each node
+	private final long[] firstPath;
+
+	public LogicTreePathRanker(Tree<LogicTreeNode> tree) {
+		this(new CompactLogicTree(tree));
+	}
+
+	/**
+	 * Creates a ranker for the given tree.
+	 * 
+	 * @throws ArithmeticException
+	 *             if the number of paths does not fit in a long
+	 */
+	public LogicTreePathRanker(CompactLogicTree tree) {
+		this.tree = tree;
+		int n = tree.getNumberOfNodes();
+		pathCount = new long[n];
+		firstPath = new long[n];
+		// children have larger indexes than their parents, so counts are
+		// computed from the last node to the root, and offsets from the root
+		// to the last node
+		for (int i = n - 1; i >= 0; i--) {
+			if (tree.isLeaf(i)) {
+				pathCount[i] = 1;
+			} else {
+				long count = 0;
+				for (int k = 0; k < tree.getNumberOfChildren(i); k++) {
+					count = Math.addExact(count, pathCount[tree.getChild(i, k)]);
+				}
+				pathCount[i] = count;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			long offset = firstPath[i];
+			for (int k = 0; k < tree.getNumberOfChildren(i); k++) {
+				int child = tree.getChild(i, k);
+				firstPath[child] = offset;
+				offset = offset + pathCount[child];
+			}
+		}
+	}
+
+	public CompactLogicTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * Returns the number of logic tree paths.
+	 */
+	public long getNumberOfPaths() {
+		return pathCount[tree.getRoot()];
+	}
+
+	/**
+	 * Returns the number of paths going through a node.
+	 */
+	public long getNumberOfPaths(int node) {
+		return pathCount[node];
+	}
+
+	/**
+	 * Returns the index of a path. The path must end at a leaf node.
+	 */
+	public long rank(CompactLogicTreePath path) {
+		if (path.getTree() != tree) {
+			throw new IllegalArgumentException(
+					"Path does not belong to the ranked tree");
+		}
+		return rank(path.getLeafNode());
+	}
+
+	/**
+	 * Returns the index of the path ending at the given leaf node.
+	 */
+	public long rank(int leafNode) {
+		if (!tree.isLeaf(leafNode)) {
+			throw new IllegalArgumentException("Node " + leafNode
+					+ " is not a leaf node");
+		}
+		return firstPath[leafNode];
+	}
+
+	/**
+	 * Returns the path with the given index.
+	 */
+	public CompactLogicTreePath unrank(long index) {
+		if (index < 0 || index >= getNumberOfPaths()) {
+			throw new IndexOutOfBoundsException("Path index: " + index
+					+ ", number of paths: " + getNumberOfPaths());
+		}
+		int depth = 0;
+		int[] childIndexes = new int[8];
+		int node = tree.getRoot();
+		while (!tree.isLeaf(node)) {
+			// last child whose first path index is <= index
+			int low = 0;
+			int high = tree.getNumberOfChildren(node) - 1;
+			while (low < high) {
+				int mid = (low + high + 1) >>> 1;
+				if (firstPath[tree.getChild(node, mid)] <= index) {
+					low = mid;
+				} else {
+					high = mid - 1;
+				}
+			}
+			if (depth == childIndexes.length) {
+				int[] copy = new int[2 * depth];
+				System.arraycopy(childIndexes, 0, copy, 0, depth);
+				childIndexes = copy;
+			}
+			childIndexes[depth++] = low;
+			node = tree.getChild(node, low);
+		}
+		int[] path = new int[depth];
+		System.arraycopy(childIndexes, 0, path, 0, depth);
+		return new CompactLogicTreePath(tree, path);
+	}
+}
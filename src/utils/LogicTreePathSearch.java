@@ -0,0 +1,151 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import parser.CompactLogicTree;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Iterates over the logic tree paths in decreasing order of weight, using a
+ * best-first search.
+ * 
+ * For each node an upper bound of the weight of the paths going through it is
+ * known: the product of the weights from the root to the node times the
+ * largest product of weights from the node to a leaf (computed once for all
+ * the nodes, from the leaves to the root). The search keeps a priority queue
+ * of nodes ordered by this bound: the node with the largest bound is removed
+ * from the queue and replaced by its children. When the removed node is a leaf
+ * node, its bound is the weight of its path, and no path not returned yet can
+ * have a larger weight.
+ * 
+ * Only the nodes needed to find the next path are visited, so the first paths
+ * are found without enumerating all the paths, and the memory used depends on
+ * the number of paths returned and not on the number of paths in the tree.
+ * Paths with equal bound are returned in the order they have been reached.
+ */
+public class LogicTreePathSearch implements Iterator<LogicTreePath> {
+
+	private final CompactLogicTree tree;
+
+	// largest product of the weights from each node (excluded) to a leaf node
+	private final double[] maxWeight;
+
+	private final PriorityQueue<Candidate> queue;
+
+	// number of nodes added to the queue, used to break ties
+	private long count;
+
+	public LogicTreePathSearch(Tree<LogicTreeNode> tree) {
+		this(new CompactLogicTree(tree));
+	}
+
+	public LogicTreePathSearch(CompactLogicTree tree) {
+		this.tree = tree;
+		int n = tree.getNumberOfNodes();
+		maxWeight = new double[n];
+		// children have larger indexes than their parent
+		for (int i = n - 1; i >= 0; i--) {
+			double max = tree.isLeaf(i) ? 1 : 0;
+			for (int k = 0; k < tree.getNumberOfChildren(i); k++) {
+				int child = tree.getChild(i, k);
+				max = Math.max(max, tree.getWeight(child) * maxWeight[child]);
+			}
+			maxWeight[i] = max;
+		}
+		queue = new PriorityQueue<Candidate>(11, new Comparator<Candidate>() {
+			public int compare(Candidate c1, Candidate c2) {
+				int c = Double.compare(c2.bound, c1.bound);
+				return c != 0 ? c : Long.compare(c1.order, c2.order);
+			}
+		});
+		int root = tree.getRoot();
+		add(root, tree.getWeight(root));
+	}
+
+	public boolean hasNext() {
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * Returns the heaviest path not returned yet.
+	 */
+	public LogicTreePath next() {
+		Candidate candidate = queue.poll();
+		if (candidate == null) {
+			throw new NoSuchElementException();
+		}
+		while (!tree.isLeaf(candidate.node)) {
+			for (int k = 0; k < tree.getNumberOfChildren(candidate.node); k++) {
+				int child = tree.getChild(candidate.node, k);
+				add(child, candidate.prefixWeight * tree.getWeight(child));
+			}
+			candidate = queue.poll();
+		}
+		return toLogicTreePath(candidate.node);
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the k heaviest paths (or all the paths if the tree has less than
+	 * k paths), in decreasing order of weight.
+	 */
+	public List<LogicTreePath> next(int k) {
+		List<LogicTreePath> paths = new ArrayList<LogicTreePath>();
+		while (paths.size() < k && hasNext()) {
+			paths.add(next());
+		}
+		return paths;
+	}
+
+	private void add(int node, double prefixWeight) {
+		queue.add(new Candidate(node, prefixWeight, prefixWeight
+				* maxWeight[node], count++));
+	}
+
+	/**
+	 * Returns the path from the root to a leaf node. The path weight is
+	 * computed multiplying the weights from the root, as in
+	 * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}.
+	 */
+	private LogicTreePath toLogicTreePath(int leafNode) {
+		List<Integer> nodes = new ArrayList<Integer>();
+		for (int node = leafNode; node >= 0; node = tree.getParent(node)) {
+			nodes.add(node);
+		}
+		LogicTreePath path = new LogicTreePath(new ArrayList<LogicTreeNode>(
+				nodes.size()), 1);
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			path.addNode(tree.getData(nodes.get(i)));
+		}
+		return path;
+	}
+
+	private static class Candidate {
+
+		final int node;
+
+		// product of the weights from the root to the node
+		final double prefixWeight;
+
+		// upper bound of the weight of the paths going through the node
+		final double bound;
+
+		final long order;
+
+		Candidate(int node, double prefixWeight, double bound, long order) {
+			this.node = node;
+			this.prefixWeight = prefixWeight;
+			this.bound = bound;
+			this.order = order;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import parser.LogicTreeNode;
+import tree.Node;
+import tree.Tree;
+
+/**
+ * Spliterator over the logic tree paths, from the root node to each leaf node.
+ *
+ * The paths still to be traversed are described by a sequence of subtrees (in
+ * pre-order). Splitting hands over the first subtrees of the sequence, up to
+ * about half of the estimated number of paths, to a new spliterator; if a
+ * single subtree is left, it is first replaced by the subtrees rooted at its
+ * children. Work is therefore always split at subtree boundaries, and the
+ * paths of each subtree are traversed with a {@link LogicTreePathIterator}.
+ *
+ * The number of paths in each subtree is counted exactly, with a single pass
+ * over the tree when the spliterator is created (subtrees shared between
+ * several parents are counted once). The spliterator is then {@link #SIZED}
+ * and {@link #SUBSIZED}; if the number of paths does not fit in a long, sizes
+ * are only estimates and these characteristics are not reported.
+ *
+ * The spliterator is {@link #ORDERED}: paths are in the same order as
+ * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}, so results collected
+ * in encounter order from a parallel stream do not depend on how the work has
+ * been split. It is not {@link #IMMUTABLE}: the tree must not be modified
+ * while paths are traversed.
+ */
+public class LogicTreePathSpliterator implements Spliterator<LogicTreePath> {
+
+	// subtrees still to be traversed, in pre-order. Each subtree is defined
+	// by the nodes from the root of the tree to the root of the subtree.
+	private final Deque<List<Node<LogicTreeNode>>> subtrees;
+
+	// iterator over the subtree currently traversed (null if none)
+	private LogicTreePathIterator current;
+
+	// number of paths left (an estimate if not exact)
+	private long estimatedSize;
+
+	// number of paths in the subtree rooted at each node, shared by all the
+	// spliterators obtained by splitting
+	private final Map<Node<LogicTreeNode>, Long> pathCounts;
+
+	// true if the path counts are exact (no overflow)
+	private final boolean exact;
+
+	private final WeightArithmetic arithmetic;
+
+	public LogicTreePathSpliterator(Tree<LogicTreeNode> tree) {
+		this(tree, WeightArithmetic.PLAIN);
+	}
+
+	public LogicTreePathSpliterator(Tree<LogicTreeNode> tree,
+			WeightArithmetic arithmetic) {
+		this.arithmetic = arithmetic;
+		subtrees = new ArrayDeque<List<Node<LogicTreeNode>>>();
+		pathCounts = new IdentityHashMap<Node<LogicTreeNode>, Long>();
+		if (tree.getRootElement() != null) {
+			List<Node<LogicTreeNode>> path = new ArrayList<Node<LogicTreeNode>>();
+			path.add(tree.getRootElement());
+			subtrees.add(path);
+			estimatedSize = countPaths(tree.getRootElement(), pathCounts);
+		}
+		exact = estimatedSize < Long.MAX_VALUE;
+	}
+
+	private LogicTreePathSpliterator(LogicTreePathIterator current,
+			Deque<List<Node<LogicTreeNode>>> subtrees, long estimatedSize,
+			WeightArithmetic arithmetic,
+			Map<Node<LogicTreeNode>, Long> pathCounts, boolean exact) {
+		this.arithmetic = arithmetic;
+		this.current = current;
+		this.subtrees = subtrees;
+		this.estimatedSize = estimatedSize;
+		this.pathCounts = pathCounts;
+		this.exact = exact;
+	}
+
+	public boolean tryAdvance(Consumer<? super LogicTreePath> action) {
+		while (current == null || !current.hasNext()) {
+			if (subtrees.isEmpty()) {
+				current = null;
+				return false;
+			}
+			current = new LogicTreePathIterator(subtrees.poll(), arithmetic);
+		}
+		action.accept(current.next());
+		if (estimatedSize > 0) {
+			estimatedSize--;
+		}
+		return true;
+	}
+
+	public Spliterator<LogicTreePath> trySplit() {
+		// replace a single subtree with the subtrees rooted at its children
+		while (current == null && subtrees.size() == 1) {
+			List<Node<LogicTreeNode>> path = subtrees.peek();
+			Node<LogicTreeNode> node = path.get(path.size() - 1);
+			if (node.getNumberOfChildren() == 0) {
+				return null;
+			}
+			subtrees.poll();
+			for (Node<LogicTreeNode> child : node.getChildren()) {
+				List<Node<LogicTreeNode>> childPath = new ArrayList<Node<LogicTreeNode>>(
+						path);
+				childPath.add(child);
+				subtrees.add(childPath);
+			}
+		}
+		if (subtrees.size() < 2) {
+			return null;
+		}
+
+		// hand over the first subtrees (and the subtree currently traversed,
+		// which comes first in encounter order)
+		long[] sizes = new long[subtrees.size()];
+		long total = 0;
+		int i = 0;
+		for (List<Node<LogicTreeNode>> path : subtrees) {
+			sizes[i] = pathCounts.get(path.get(path.size() - 1));
+			total = add(total, sizes[i]);
+			i++;
+		}
+		Deque<List<Node<LogicTreeNode>>> prefix = new ArrayDeque<List<Node<LogicTreeNode>>>();
+		long prefixSize = 0;
+		i = 0;
+		do {
+			prefix.add(subtrees.poll());
+			prefixSize = add(prefixSize, sizes[i]);
+			i++;
+		} while (subtrees.size() > 1 && 2 * (prefixSize + sizes[i]) <= total);
+
+		long splitSize = prefixSize;
+		if (current != null) {
+			// paths left in the subtree currently traversed
+			splitSize = add(splitSize, Math.max(0, estimatedSize - total));
+		}
+		LogicTreePathSpliterator split = new LogicTreePathSpliterator(current,
+				prefix, splitSize, arithmetic, pathCounts, exact);
+		current = null;
+		estimatedSize = total - prefixSize;
+		return split;
+	}
+
+	public long estimateSize() {
+		return estimatedSize;
+	}
+
+	public int characteristics() {
+		if (exact) {
+			return ORDERED | NONNULL | SIZED | SUBSIZED;
+		}
+		return ORDERED | NONNULL;
+	}
+
+	/**
+	 * Counts the number of paths in the subtree rooted at the given node,
+	 * storing the number of paths of each node of the subtree in the given
+	 * map. Counts saturate at {@link Long#MAX_VALUE}.
+	 */
+	private static long countPaths(Node<LogicTreeNode> root,
+			Map<Node<LogicTreeNode>, Long> pathCounts) {
+		// post-order traversal with an explicit stack, skipping the nodes
+		// already counted
+		Deque<Node<LogicTreeNode>> stack = new ArrayDeque<Node<LogicTreeNode>>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node<LogicTreeNode> node = stack.peek();
+			if (pathCounts.containsKey(node)) {
+				stack.pop();
+				continue;
+			}
+			boolean ready = true;
+			for (Node<LogicTreeNode> child : node.getChildren()) {
+				if (!pathCounts.containsKey(child)) {
+					stack.push(child);
+					ready = false;
+				}
+			}
+			if (ready) {
+				stack.pop();
+				long count = node.getNumberOfChildren() == 0 ? 1 : 0;
+				for (Node<LogicTreeNode> child : node.getChildren()) {
+					count = add(count, pathCounts.get(child));
+				}
+				pathCounts.put(node, count);
+			}
+		}
+		return pathCounts.get(root);
+	}
+
+	private static long add(long a, long b) {
+		long sum = a + b;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+}
@@ -0,0 +1,221 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import parser.CompactLogicTree;
+import parser.FactorizedLogicTree;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Product of several logic trees (for instance a source model logic tree and
+ * a GMPE logic tree for each tectonic region type).
+ * 
+ * A path of the product is the concatenation of one path of each logic tree,
+ * that is a path of the tree returned by
+ * {@link LogicTreeUtils#joinTrees(List)}. Unlike joinTrees, the product does
+ * not modify the logic trees and never builds the joined tree: paths are
+ * computed when requested from the paths of each logic tree, so the memory
+ * needed is proportional to the total size of the logic trees and not to
+ * their product.
+ * 
+ * Paths are indexed in the order of
+ * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)} applied to the joined
+ * tree, the index of a path being computed from the indexes of its parts as a
+ * mixed radix number (see {@link LogicTreePathRanker}).
+ * 
+ * A {@link FactorizedLogicTree} is handled as the product of its factors,
+ * the roots of the factors after the first being left out of the paths: the
+ * paths, their order and the samples are those of the explicit logic tree.
+ */
+public class LogicTreeProduct implements Iterable<LogicTreePath> {
+
+	private final List<LogicTreePathRanker> rankers;
+
+	private final List<LogicTreeSampler> samplers;
+
+	private final long numberOfPaths;
+
+	// true if the roots of the trees after the first are not part of the
+	// paths
+	private final boolean virtualRoots;
+
+	/**
+	 * Creates the product of the given logic trees.
+	 * 
+	 * @throws ArithmeticException
+	 *             if the number of paths does not fit in a long
+	 */
+	public LogicTreeProduct(List<Tree<LogicTreeNode>> trees) {
+		this(toCompactLogicTrees(trees), false);
+	}
+
+	/**
+	 * Creates the product of the factors of a factorized logic tree.
+	 * 
+	 * @throws ArithmeticException
+	 *             if the number of paths does not fit in a long
+	 */
+	public LogicTreeProduct(FactorizedLogicTree tree) {
+		this(tree.getFactors(), true);
+	}
+
+	private LogicTreeProduct(List<CompactLogicTree> trees, boolean virtualRoots) {
+		this.virtualRoots = virtualRoots;
+		rankers = new ArrayList<LogicTreePathRanker>();
+		samplers = new ArrayList<LogicTreeSampler>();
+		long n = 1;
+		for (CompactLogicTree compactTree : trees) {
+			LogicTreePathRanker ranker = new LogicTreePathRanker(compactTree);
+			rankers.add(ranker);
+			samplers.add(new LogicTreeSampler(compactTree));
+			n = Math.multiplyExact(n, ranker.getNumberOfPaths());
+		}
+		numberOfPaths = n;
+	}
+
+	private static List<CompactLogicTree> toCompactLogicTrees(
+			List<Tree<LogicTreeNode>> trees) {
+		List<CompactLogicTree> compactTrees = new ArrayList<CompactLogicTree>();
+		for (Tree<LogicTreeNode> tree : trees) {
+			compactTrees.add(new CompactLogicTree(tree));
+		}
+		return compactTrees;
+	}
+
+	/**
+	 * Returns the number of logic trees in the product.
+	 */
+	public int getNumberOfTrees() {
+		return rankers.size();
+	}
+
+	/**
+	 * Returns the number of paths, that is the product of the number of paths
+	 * of each logic tree.
+	 */
+	public long getNumberOfPaths() {
+		return numberOfPaths;
+	}
+
+	/**
+	 * Returns the indexes, in each logic tree, of the parts of the path with
+	 * the given index.
+	 */
+	public long[] getPathIndexes(long index) {
+		if (index < 0 || index >= numberOfPaths) {
+			throw new IndexOutOfBoundsException("Path index: " + index
+					+ ", number of paths: " + numberOfPaths);
+		}
+		long[] indexes = new long[rankers.size()];
+		for (int k = rankers.size() - 1; k >= 0; k--) {
+			long n = rankers.get(k).getNumberOfPaths();
+			indexes[k] = index % n;
+			index = index / n;
+		}
+		return indexes;
+	}
+
+	/**
+	 * Returns the path with the given index.
+	 */
+	public LogicTreePath getPath(long index) {
+		long[] indexes = getPathIndexes(index);
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
+		double pathWeight = 1;
+		for (int k = 0; k < indexes.length; k++) {
+			CompactLogicTreePath part = rankers.get(k).unrank(indexes[k]);
+			CompactLogicTree tree = part.getTree();
+			int node = tree.getRoot();
+			if (k == 0 || !virtualRoots) {
+				nodeList.add(tree.getData(node));
+				pathWeight = pathWeight * tree.getWeight(node);
+			}
+			for (int i = 0; i < part.getDepth(); i++) {
+				node = tree.getChild(node, part.getChildIndex(i));
+				nodeList.add(tree.getData(node));
+				pathWeight = pathWeight * tree.getWeight(node);
+			}
+		}
+		return new LogicTreePath(nodeList, pathWeight);
+	}
+
+	/**
+	 * Returns the weight of the path with the given index.
+	 */
+	public double getPathWeight(long index) {
+		long[] indexes = getPathIndexes(index);
+		double pathWeight = 1;
+		for (int k = 0; k < indexes.length; k++) {
+			pathWeight = pathWeight
+					* rankers.get(k).unrank(indexes[k]).getPathWeight();
+		}
+		return pathWeight;
+	}
+
+	/**
+	 * Returns an iterator over all paths, in index order.
+	 */
+	public Iterator<LogicTreePath> iterator() {
+		return new Iterator<LogicTreePath>() {
+
+			private long index = 0;
+
+			public boolean hasNext() {
+				return index < numberOfPaths;
+			}
+
+			public LogicTreePath next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return getPath(index++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Randomly samples a path, sampling a path in each logic tree. Random
+	 * numbers are used as when sampling the joined tree with
+	 * {@link LogicTreeUtils#sampleLogicTreePaths(Tree, Random, int)} (the root
+	 * of each logic tree after the first being the only child of the leaf
+	 * nodes of the previous one), so that for the same random numbers the
+	 * same paths are returned.
+	 */
+	public LogicTreePath samplePath(Random rn) {
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
+		CompactLogicTree first = samplers.get(0).getTree();
+		nodeList.add(first.getData(first.getRoot()));
+		LogicTreePath path = new LogicTreePath(nodeList, 1);
+		for (int k = 0; k < samplers.size(); k++) {
+			LogicTreeSampler sampler = samplers.get(k);
+			if (k > 0 && !virtualRoots) {
+				// selection of the root node as only child of the leaf node
+				rn.nextDouble();
+				path.addNode(sampler.getTree().getData(
+						sampler.getTree().getRoot()));
+			}
+			sampler.sampleNodes(rn, path);
+		}
+		return path;
+	}
+
+	/**
+	 * Randomly samples n paths.
+	 */
+	public List<LogicTreePath> samplePaths(Random rn, int n) {
+		List<LogicTreePath> logicTreePaths = new ArrayList<LogicTreePath>(n);
+		for (int i = 0; i < n; i++) {
+			logicTreePaths.add(samplePath(rn));
+		}
+		return logicTreePaths;
+	}
+}
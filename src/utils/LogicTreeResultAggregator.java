@@ -0,0 +1,145 @@
+package utils;
+
+/**
+ * Aggregates results computed for each logic tree path (for instance a hazard
+ * curve, one value for each intensity measure level), as a stream of
+ * (path weight, values) records.
+ * 
+ * For each element of the results the aggregator keeps the weighted mean
+ * (compensated sums of weight times value, see
+ * {@link WeightArithmetic#COMPENSATED}) and a {@link WeightedQuantileSketch},
+ * so the memory used depends on the number of elements and on the sketch
+ * compression, and not on the number of records. Records can be added by
+ * different threads or workers to different aggregators, which are then
+ * combined with {@link #merge(LogicTreeResultAggregator)}.
+ * 
+ * When results are computed for sampled paths, and not for all the paths,
+ * each path has the same weight, and records should be added with weight 1.
+ * Objects of this class are not thread-safe.
+ */
+public class LogicTreeResultAggregator {
+
+	private final int length;
+
+	private final double compression;
+
+	private long count;
+
+	private double totalWeight;
+
+	// compensated sums of weight times value
+	private final double[] sums;
+	private final double[] compensations;
+
+	private final WeightedQuantileSketch[] sketches;
+
+	public LogicTreeResultAggregator(int length, double compression) {
+		this.length = length;
+		this.compression = compression;
+		sums = new double[length];
+		compensations = new double[length];
+		sketches = new WeightedQuantileSketch[length];
+		for (int i = 0; i < length; i++) {
+			sketches[i] = new WeightedQuantileSketch(compression);
+		}
+	}
+
+	/**
+	 * Adds the results computed for a logic tree path, weighted with the path
+	 * weight.
+	 */
+	public void add(LogicTreePath path, double[] values) {
+		add(path.getPathWeight(), values);
+	}
+
+	/**
+	 * Adds results with the given weight.
+	 */
+	public void add(double weight, double[] values) {
+		if (values.length != length) {
+			throw new IllegalArgumentException("Expected " + length
+					+ " values, found " + values.length);
+		}
+		if (weight < 0 || Double.isNaN(weight)) {
+			throw new IllegalArgumentException(
+					"Weight must be non-negative: " + weight);
+		}
+		for (int i = 0; i < length; i++) {
+			addToSum(i, weight * values[i]);
+			sketches[i].add(values[i], weight);
+		}
+		count++;
+		totalWeight = totalWeight + weight;
+	}
+
+	/**
+	 * Adds the results aggregated by another aggregator.
+	 */
+	public void merge(LogicTreeResultAggregator other) {
+		if (other.length != length) {
+			throw new IllegalArgumentException("Expected " + length
+					+ " values, found " + other.length);
+		}
+		for (int i = 0; i < length; i++) {
+			addToSum(i, other.sums[i]);
+			addToSum(i, other.compensations[i]);
+			sketches[i].merge(other.sketches[i]);
+		}
+		count = count + other.count;
+		totalWeight = totalWeight + other.totalWeight;
+	}
+
+	/**
+	 * Returns the number of records added.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the sum of the weights of the records added.
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	public double getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Returns the weighted mean of each element.
+	 */
+	public double[] getMean() {
+		double[] mean = new double[length];
+		for (int i = 0; i < length; i++) {
+			mean[i] = (sums[i] + compensations[i]) / totalWeight;
+		}
+		return mean;
+	}
+
+	/**
+	 * Returns the estimated weighted quantile q of each element.
+	 */
+	public double[] getQuantile(double q) {
+		double[] quantile = new double[length];
+		for (int i = 0; i < length; i++) {
+			quantile[i] = sketches[i].getQuantile(q);
+		}
+		return quantile;
+	}
+
+	/**
+	 * Returns the quantile sketch of the given element.
+	 */
+	public WeightedQuantileSketch getSketch(int i) {
+		return sketches[i];
+	}
+
+	private void addToSum(int i, double x) {
+		double sum = sums[i] + x;
+		compensations[i] = compensations[i]
+				+ WeightArithmetic.sumError(sums[i], x, sum);
+		sums[i] = sum;
+	}
+}
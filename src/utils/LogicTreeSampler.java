@@ -0,0 +1,402 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import parser.CompactLogicTree;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Samples logic tree paths using precomputed cumulative weights.
+ * 
+ * Sampling is done, as in
+ * {@link LogicTreeUtils#sampleLogicTreePaths(Tree, Random, int)}, using the
+ * inverse transform method at each branching level. The cumulative weights of
+ * the children of every node are computed once, when the sampler is created,
+ * and stored in a single array (the children of a node are contiguous in a
+ * {@link CompactLogicTree}). Selecting a child is then a binary search over
+ * the cumulative weights of the node's children, so sampling a leaf node takes
+ * a time proportional to the path length and allocates no memory.
+ * 
+ * Cumulative weights are summed in the children order, and a child is
+ * selected if it is the first one whose cumulative weight is not smaller than
+ * the random number, so for the same sequence of random numbers the sampled
+ * paths are the same as those obtained by scanning the children.
+ * 
+ * With {@link WeightArithmetic#COMPENSATED} cumulative weights are
+ * compensated sums, and the weights of the sampled paths are computed in log
+ * space.
+ */
+public class LogicTreeSampler {
+
+	// odd constant used by SplittableRandom to space seeds
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final CompactLogicTree tree;
+
+	// cumulative weight of each node, that is the sum of the weights of the
+	// node and of the preceding siblings
+	private final double[] cumulativeWeight;
+
+	private final WeightArithmetic arithmetic;
+
+	public LogicTreeSampler(Tree<LogicTreeNode> tree) {
+		this(new CompactLogicTree(tree));
+	}
+
+	public LogicTreeSampler(CompactLogicTree tree) {
+		this(tree, WeightArithmetic.PLAIN);
+	}
+
+	public LogicTreeSampler(Tree<LogicTreeNode> tree,
+			WeightArithmetic arithmetic) {
+		this(new CompactLogicTree(tree), arithmetic);
+	}
+
+	public LogicTreeSampler(CompactLogicTree tree, WeightArithmetic arithmetic) {
+		this.tree = tree;
+		this.arithmetic = arithmetic;
+		cumulativeWeight = new double[tree.getNumberOfNodes()];
+		for (int i = 0; i < tree.getNumberOfNodes(); i++) {
+			double p = 0;
+			double compensation = 0;
+			for (int k = 0; k < tree.getNumberOfChildren(i); k++) {
+				int child = tree.getChild(i, k);
+				double weight = tree.getWeight(child);
+				double sum = p + weight;
+				if (arithmetic == WeightArithmetic.COMPENSATED) {
+					compensation = compensation
+							+ WeightArithmetic.sumError(p, weight, sum);
+					cumulativeWeight[child] = sum + compensation;
+				} else {
+					cumulativeWeight[child] = sum;
+				}
+				p = sum;
+			}
+		}
+	}
+
+	public CompactLogicTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * Randomly samples a logic tree path and returns the index of its leaf
+	 * node.
+	 */
+	public int sampleLeaf(Random rn) {
+		int node = tree.getRoot();
+		while (!tree.isLeaf(node)) {
+			node = sampleChild(node, rn.nextDouble());
+		}
+		return node;
+	}
+
+	/**
+	 * Randomly samples a logic tree path.
+	 */
+	public LogicTreePath samplePath(Random rn) {
+		LogicTreePath path = newPath();
+		sampleNodes(rn, path);
+		return path;
+	}
+
+	/**
+	 * Randomly samples a logic tree path, and adds its nodes (apart from the
+	 * root node) to the given path.
+	 */
+	void sampleNodes(Random rn, LogicTreePath path) {
+		int node = tree.getRoot();
+		while (!tree.isLeaf(node)) {
+			node = sampleChild(node, rn.nextDouble());
+			path.addNode(tree.getData(node));
+		}
+	}
+
+	/**
+	 * Randomly samples n logic tree paths.
+	 */
+	public List<LogicTreePath> samplePaths(Random rn, int n) {
+		List<LogicTreePath> logicTreePaths = new ArrayList<LogicTreePath>(n);
+		for (int i = 0; i < n; i++) {
+			logicTreePaths.add(samplePath(rn));
+		}
+		return logicTreePaths;
+	}
+
+	/**
+	 * Randomly samples the logic tree path with the given index, using a
+	 * random number generator derived from a master seed and from the sample
+	 * index only (see {@link #getRandom(long, long)}). The same seed and index
+	 * always give the same path, whatever the order in which samples are
+	 * drawn, and whatever the thread or process drawing them.
+	 */
+	public LogicTreePath samplePath(long seed, long index) {
+		SplittableRandom rn = getRandom(seed, index);
+		LogicTreePath path = newPath();
+		int node = tree.getRoot();
+		while (!tree.isLeaf(node)) {
+			node = sampleChild(node, rn.nextDouble());
+			path.addNode(tree.getData(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Randomly samples the logic tree path with the given index (see
+	 * {@link #samplePath(long, long)}) and returns the index of its leaf node.
+	 */
+	public int sampleLeaf(long seed, long index) {
+		SplittableRandom rn = getRandom(seed, index);
+		int node = tree.getRoot();
+		while (!tree.isLeaf(node)) {
+			node = sampleChild(node, rn.nextDouble());
+		}
+		return node;
+	}
+
+	/**
+	 * Randomly samples n logic tree paths, with indexes from 0 to n-1 (see
+	 * {@link #samplePath(long, long)}). If parallel is true, samples are drawn
+	 * in parallel. In both cases the i-th element of the returned list is the
+	 * sample with index i, so the result does not depend on the number of
+	 * threads used.
+	 */
+	public List<LogicTreePath> samplePaths(final long seed, int n,
+			boolean parallel) {
+		final LogicTreePath[] logicTreePaths = new LogicTreePath[n];
+		IntStream indexes = IntStream.range(0, n);
+		if (parallel) {
+			indexes = indexes.parallel();
+		}
+		indexes.forEach(new IntConsumer() {
+			public void accept(int i) {
+				logicTreePaths[i] = samplePath(seed, i);
+			}
+		});
+		return Arrays.asList(logicTreePaths);
+	}
+
+	/**
+	 * Samples n logic tree paths, drawing the random numbers with the given
+	 * method. Using {@link SamplingMethod#MONTE_CARLO} is equivalent to
+	 * {@link #samplePaths(long, int, boolean)}. The other methods spread the
+	 * samples more evenly over the paths, so that the sampled branch
+	 * frequencies are closer to the branch weights for the same number of
+	 * samples.
+	 */
+	public List<LogicTreePath> samplePaths(SamplingMethod method, long seed,
+			int n) {
+		if (method == SamplingMethod.MONTE_CARLO) {
+			return samplePaths(seed, n, false);
+		}
+		List<LogicTreePath> logicTreePaths = new ArrayList<LogicTreePath>(n);
+		if (method == SamplingMethod.STRATIFIED) {
+			for (int i = 0; i < n; i++) {
+				double u = (i + getRandom(seed, i).nextDouble()) / n;
+				logicTreePaths.add(samplePath(u));
+			}
+			return logicTreePaths;
+		}
+
+		int depth = getDepth();
+		SplittableRandom rn = new SplittableRandom(seed);
+		double[] u = new double[depth];
+		if (method == SamplingMethod.LATIN_HYPERCUBE) {
+			// random permutation of the intervals for each branching level
+			int[][] strata = new int[depth][n];
+			for (int d = 0; d < depth; d++) {
+				for (int i = 0; i < n; i++) {
+					strata[d][i] = i;
+				}
+				for (int i = n - 1; i > 0; i--) {
+					int j = rn.nextInt(i + 1);
+					int tmp = strata[d][i];
+					strata[d][i] = strata[d][j];
+					strata[d][j] = tmp;
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				SplittableRandom sampleRn = getRandom(seed, i);
+				for (int d = 0; d < depth; d++) {
+					u[d] = (strata[d][i] + sampleRn.nextDouble()) / n;
+				}
+				logicTreePaths.add(samplePath(u));
+			}
+		} else if (method == SamplingMethod.HALTON) {
+			int[] bases = getPrimes(depth);
+			double[] shift = new double[depth];
+			for (int d = 0; d < depth; d++) {
+				shift[d] = rn.nextDouble();
+			}
+			for (int i = 0; i < n; i++) {
+				for (int d = 0; d < depth; d++) {
+					u[d] = radicalInverse(bases[d], i + 1) + shift[d];
+					if (u[d] >= 1) {
+						u[d] = u[d] - 1;
+					}
+				}
+				logicTreePaths.add(samplePath(u));
+			}
+		}
+		return logicTreePaths;
+	}
+
+	/**
+	 * Returns the number of branching levels, that is the length of the
+	 * longest path minus one.
+	 */
+	public int getDepth() {
+		int[] depth = new int[tree.getNumberOfNodes()];
+		int maxDepth = 0;
+		// parents have smaller indexes than their children
+		for (int i = 1; i < depth.length; i++) {
+			depth[i] = depth[tree.getParent(i)] + 1;
+			maxDepth = Math.max(maxDepth, depth[i]);
+		}
+		return maxDepth;
+	}
+
+	/**
+	 * Samples a logic tree path using u[i] as random number for the i-th
+	 * branching level.
+	 */
+	LogicTreePath samplePath(double[] u) {
+		LogicTreePath path = newPath();
+		int node = tree.getRoot();
+		for (int d = 0; !tree.isLeaf(node); d++) {
+			node = sampleChild(node, u[d]);
+			path.addNode(tree.getData(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Samples a logic tree path using a single random number u, that is
+	 * returns the path whose interval contains u when [0, 1) is divided into
+	 * intervals whose lengths are the path weights, in the order of
+	 * {@link LogicTreeUtils#computeAllLogicTreePaths(Tree)}. At each branching
+	 * level the bounds of the intervals of the children are computed in
+	 * [0, 1), from the lower bound and the prefix weight of the selected node,
+	 * rather than rescaling u to the interval of the selected node: rounding
+	 * errors are not amplified by the small weights of deep paths.
+	 */
+	LogicTreePath samplePath(double u) {
+		LogicTreePath path = newPath();
+		int node = tree.getRoot();
+		// lower bound and length of the interval of the selected node
+		double lower = 0;
+		double prefixWeight = 1;
+		while (!tree.isLeaf(node)) {
+			int first = tree.getChild(node, 0);
+			int low = first;
+			int high = low + tree.getNumberOfChildren(node) - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (u <= lower + prefixWeight * cumulativeWeight[mid]) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			if (low > first) {
+				lower = lower + prefixWeight * cumulativeWeight[low - 1];
+			}
+			prefixWeight = prefixWeight * tree.getWeight(low);
+			node = low;
+			path.addNode(tree.getData(node));
+		}
+		return path;
+	}
+
+	/**
+	 * Returns a path containing the root node only, with weight 1, to which
+	 * sampled nodes are added.
+	 */
+	private LogicTreePath newPath() {
+		List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
+		// add root node
+		nodeList.add(tree.getData(tree.getRoot()));
+		if (arithmetic == WeightArithmetic.COMPENSATED) {
+			return new LogWeightLogicTreePath(nodeList, 1, 0);
+		}
+		return new LogicTreePath(nodeList, 1);
+	}
+
+	/**
+	 * Returns the radical inverse of i in the given base, that is the number
+	 * obtained mirroring the digits of i around the decimal point.
+	 */
+	private static double radicalInverse(int base, long i) {
+		double inverse = 0;
+		double factor = 1.0 / base;
+		while (i > 0) {
+			inverse = inverse + factor * (i % base);
+			i = i / base;
+			factor = factor / base;
+		}
+		return inverse;
+	}
+
+	/**
+	 * Returns the first n prime numbers.
+	 */
+	private static int[] getPrimes(int n) {
+		int[] primes = new int[n];
+		int count = 0;
+		for (int candidate = 2; count < n; candidate++) {
+			boolean isPrime = true;
+			for (int j = 0; j < count && primes[j] * primes[j] <= candidate; j++) {
+				if (candidate % primes[j] == 0) {
+					isPrime = false;
+					break;
+				}
+			}
+			if (isPrime) {
+				primes[count++] = candidate;
+			}
+		}
+		return primes;
+	}
+
+	/**
+	 * Returns the random number generator used for the sample with the given
+	 * index. The generator seed is obtained by scrambling the master seed and
+	 * the index with the SplitMix64 function (the one used by
+	 * {@link SplittableRandom}), so that generators of consecutive indexes
+	 * produce independent sequences.
+	 */
+	public static SplittableRandom getRandom(long seed, long index) {
+		return new SplittableRandom(mix64(seed + GOLDEN_GAMMA * (index + 1)));
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the first child whose cumulative weight is not smaller than u.
+	 * If weights sum to less than u, the last child is returned.
+	 */
+	int sampleChild(int node, double u) {
+		int low = tree.getChild(node, 0);
+		int high = low + tree.getNumberOfChildren(node) - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (u <= cumulativeWeight[mid]) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+}
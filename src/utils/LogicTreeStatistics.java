@@ -0,0 +1,155 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import parser.CompactLogicTree;
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Statistics of the logic tree paths, computed without enumerating the paths.
+ * 
+ * For each node two quantities are computed, with a single pass over the
+ * nodes in each direction:
+ * 
+ * - the prefix weight, that is the product of the weights of the nodes from
+ * the root to the node (computed from the root to the leaves)
+ * 
+ * - the subtree weight, that is the sum, over the paths of the subtree rooted
+ * at the node, of the products of the weights below the node (1 for a leaf
+ * node, computed from the leaves to the root)
+ * 
+ * The sum of the weights of the paths going through a node (the marginal
+ * weight of the node) is the product of the two. The number of paths, the
+ * total weight of the paths and the marginal weights of each branch are
+ * therefore obtained in a time proportional to the number of nodes.
+ */
+public class LogicTreeStatistics {
+
+	private final CompactLogicTree tree;
+
+	private final long numberOfPaths;
+
+	private final double[] prefixWeight;
+
+	private final double[] subtreeWeight;
+
+	// sum of the marginal weights of the nodes with the same data
+	private final Map<LogicTreeNode, Double> branchWeights;
+
+	public LogicTreeStatistics(Tree<LogicTreeNode> tree) {
+		this(new CompactLogicTree(tree));
+	}
+
+	public LogicTreeStatistics(CompactLogicTree tree) {
+		this.tree = tree;
+		this.numberOfPaths = new LogicTreePathRanker(tree).getNumberOfPaths();
+		int n = tree.getNumberOfNodes();
+		prefixWeight = new double[n];
+		subtreeWeight = new double[n];
+		// parents have smaller indexes than their children
+		for (int i = 0; i < n; i++) {
+			int parent = tree.getParent(i);
+			double parentWeight = parent < 0 ? 1 : prefixWeight[parent];
+			prefixWeight[i] = parentWeight * tree.getWeight(i);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			if (tree.isLeaf(i)) {
+				subtreeWeight[i] = 1;
+			} else {
+				double weight = 0;
+				for (int k = 0; k < tree.getNumberOfChildren(i); k++) {
+					int child = tree.getChild(i, k);
+					weight = weight + tree.getWeight(child)
+							* subtreeWeight[child];
+				}
+				subtreeWeight[i] = weight;
+			}
+		}
+		double[] weights = new double[tree.getNumberOfBranches()];
+		for (int i = 0; i < n; i++) {
+			weights[tree.getBranchIndex(i)] += getMarginalWeight(i);
+		}
+		branchWeights = new LinkedHashMap<LogicTreeNode, Double>();
+		for (int b = 0; b < weights.length; b++) {
+			branchWeights.put(tree.getBranch(b), weights[b]);
+		}
+	}
+
+	public CompactLogicTree getTree() {
+		return tree;
+	}
+
+	/**
+	 * Returns the number of logic tree paths.
+	 */
+	public long getNumberOfPaths() {
+		return numberOfPaths;
+	}
+
+	/**
+	 * Returns the sum of the weights of all logic tree paths (1 for a logic
+	 * tree with valid weights).
+	 */
+	public double getTotalWeight() {
+		return getMarginalWeight(tree.getRoot());
+	}
+
+	/**
+	 * Returns the product of the weights of the nodes from the root to the
+	 * given node.
+	 */
+	public double getPrefixWeight(int node) {
+		return prefixWeight[node];
+	}
+
+	/**
+	 * Returns the sum of the weights of the paths going through the given
+	 * node.
+	 */
+	public double getMarginalWeight(int node) {
+		return prefixWeight[node] * subtreeWeight[node];
+	}
+
+	/**
+	 * Returns the sum of the weights of the paths going through each branch,
+	 * that is through a node containing the branch data.
+	 */
+	public Map<LogicTreeNode, Double> getBranchWeights() {
+		return branchWeights;
+	}
+
+	/**
+	 * Returns the sum of the weights of the paths going through a node with
+	 * the given branchID, for each branchID.
+	 */
+	public Map<String, Double> getBranchIDWeights() {
+		Map<String, Double> weights = new HashMap<String, Double>();
+		for (Map.Entry<LogicTreeNode, Double> e : branchWeights.entrySet()) {
+			String branchID = e.getKey().getBranchID();
+			Double weight = weights.get(branchID);
+			weights.put(branchID, weight == null ? e.getValue() : weight
+					+ e.getValue());
+		}
+		return weights;
+	}
+
+	/**
+	 * Returns the sum of the weights of the paths going through a node with
+	 * the given uncertainty type and model.
+	 */
+	public double getUncertaintyModelWeight(String uncertaintyType,
+			String uncertaintyModel) {
+		double weight = 0;
+		for (Map.Entry<LogicTreeNode, Double> e : branchWeights.entrySet()) {
+			if (e.getKey().getUncertaintyType().equals(uncertaintyType)
+					&& e.getKey().getUncertaintyModel()
+							.equals(uncertaintyModel)) {
+				weight = weight + e.getValue();
+			}
+		}
+		return weight;
+	}
+}
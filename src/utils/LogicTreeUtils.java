@@ -1,9 +1,18 @@
 package utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import parser.LogicTreeDag;
 import parser.LogicTreeNode;
 import tree.Node;
 import tree.Tree;
@@ -18,15 +27,44 @@ public class LogicTreeUtils {
 	 * Checks that children of a node have weights that sum to 1.
 	 */
 	public Boolean hasValidWeights(Tree<LogicTreeNode> tree) {
+		return hasValidWeights(tree, WeightArithmetic.PLAIN);
+	}
+
+	/**
+	 * Checks that children of a node have weights that sum to 1. With
+	 * {@link WeightArithmetic#COMPENSATED} weights are summed with a
+	 * compensated sum, and the sum of n weights is accepted if it differs
+	 * from 1 by at most n ulps (each weight read from the logic tree file
+	 * differs from its decimal value by at most half an ulp of 1). With
+	 * {@link WeightArithmetic#PLAIN} the sum must be exactly 1.
+	 */
+	public Boolean hasValidWeights(Tree<LogicTreeNode> tree,
+			WeightArithmetic arithmetic) {
 		Boolean isValid = true;
-		List<Node<LogicTreeNode>> nodeList = tree.toList();
-		for (Node<LogicTreeNode> node : nodeList) {
+		Iterator<Node<LogicTreeNode>> i = tree.preOrderIterator();
+		while (i.hasNext()) {
+			Node<LogicTreeNode> node = i.next();
 			if (!node.getChildren().isEmpty()) {
 				double weigth = 0.0;
-				for (Node<LogicTreeNode> child : node.getChildren()) {
-					weigth = weigth + child.data.getUncertaintyWeight();
+				double compensation = 0.0;
+				for (int k = 0; k < node.getNumberOfChildren(); k++) {
+					double w = node.getChildren().get(k).data
+							.getUncertaintyWeight();
+					double sum = weigth + w;
+					if (arithmetic == WeightArithmetic.COMPENSATED) {
+						compensation = compensation
+								+ WeightArithmetic.sumError(weigth, w, sum);
+					}
+					weigth = sum;
 				}
-				if (weigth != 1.0) {
+				if (arithmetic == WeightArithmetic.COMPENSATED) {
+					double tolerance = node.getNumberOfChildren()
+							* Math.ulp(1.0);
+					if (Math.abs(weigth + compensation - 1.0) > tolerance) {
+						isValid = false;
+						break;
+					}
+				} else if (weigth != 1.0) {
 					isValid = false;
 					break;
 				}
@@ -36,136 +74,351 @@ public class LogicTreeUtils {
 	}
 
 	/**
-	 * Computes all logic tree paths from the root node. Algorithm taken and
-	 * adapted from http://cslibrary.stanford.edu/110/BinaryTrees.html#java
-	 * (printPaths() solution)
+	 * Computes all logic tree paths from the root node. Paths are computed
+	 * using {@link #getLogicTreePathIterator(Tree)}.
 	 */
 	public List<LogicTreePath> computeAllLogicTreePaths(Tree<LogicTreeNode> tree) {
+		return computeAllLogicTreePaths(tree, WeightArithmetic.PLAIN);
+	}
+
+	/**
+	 * Computes all logic tree paths from the root node, computing path
+	 * weights with the given arithmetic.
+	 */
+	public List<LogicTreePath> computeAllLogicTreePaths(
+			Tree<LogicTreeNode> tree, WeightArithmetic arithmetic) {
 		List<LogicTreePath> logicTreePaths = new ArrayList<LogicTreePath>();
-		List<LogicTreeNode> path = new ArrayList<LogicTreeNode>();
-		int pathLen = 0;
-		computeAllLogicTreePaths(tree.getRootElement(), path, pathLen,
-				logicTreePaths);
+		Iterator<LogicTreePath> i = getLogicTreePathIterator(tree, arithmetic);
+		while (i.hasNext()) {
+			logicTreePaths.add(i.next());
+		}
 		return logicTreePaths;
 	}
 
 	/**
-	 * Compute all logic tree paths in a recursive way.
+	 * Returns the logic tree path from the root node to the given node (a leaf
+	 * node for a complete path), following the parents of the nodes (see
+	 * {@link Tree#getPathFromRoot(Node)}), so in a time proportional to the
+	 * depth of the node once the parent index of the tree has been built. The
+	 * path weight is the prefix weight cached with the parent index (see
+	 * {@link Tree#getPrefixWeight(Node)}), equal to the weight computed in
+	 * {@link #computeAllLogicTreePaths(Tree)}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the node is not in the tree, or is reached by several
+	 *             paths from the root node, that is if it is below a subtree
+	 *             shared by several nodes (as in a tree returned by
+	 *             {@link #joinTrees(List)}): use
+	 *             {@link #getLogicTreePaths(Tree, Node)} for such nodes
 	 */
-	private void computeAllLogicTreePaths(Node<LogicTreeNode> node,
-			List<LogicTreeNode> path, int pathLen,
-			List<LogicTreePath> logicTreePaths) {
-		if (node == null)
-			return;
+	public LogicTreePath getLogicTreePath(Tree<LogicTreeNode> tree,
+			Node<LogicTreeNode> node) {
+		long numberOfPaths = tree.getNumberOfPathsFromRoot(node);
+		if (numberOfPaths == 0) {
+			throw new IllegalArgumentException("Node " + node.getData()
+					+ " is not in the tree");
+		}
+		if (numberOfPaths > 1) {
+			throw new IllegalArgumentException("Node " + node.getData()
+					+ " is reached by " + numberOfPaths
+					+ " paths from the root node, use getLogicTreePaths");
+		}
+		List<Node<LogicTreeNode>> nodes = tree.getPathFromRoot(node);
+		List<LogicTreeNode> path = new ArrayList<LogicTreeNode>(nodes.size());
+		for (Node<LogicTreeNode> n : nodes) {
+			path.add(n.getData());
+		}
+		return new LogicTreePath(path, tree.getPrefixWeight(node));
+	}
 
-		if (path.size() <= pathLen) {
-			path.add(pathLen, node.data);
-		} else {
-			path.set(pathLen, node.data);
+	/**
+	 * Returns all the logic tree paths from the root node to the given node,
+	 * in the order of {@link #computeAllLogicTreePaths(Tree)}. A node below a
+	 * shared subtree (as in a tree returned by {@link #joinTrees(List)}) is
+	 * reached by a path through each of the parents of the subtree; the
+	 * number of paths is {@link Tree#getNumberOfPathsFromRoot(Node)}, and the
+	 * sum of their weights is {@link Tree#getPrefixWeight(Node)}. Only the
+	 * ancestors of the node are visited.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the node is not in the tree
+	 */
+	public List<LogicTreePath> getLogicTreePaths(Tree<LogicTreeNode> tree,
+			Node<LogicTreeNode> node) {
+		if (tree.getNumberOfPathsFromRoot(node) == 0) {
+			throw new IllegalArgumentException("Node " + node.getData()
+					+ " is not in the tree");
 		}
-		pathLen = pathLen + 1;
-
-		if (node.getChildren().isEmpty()) {
-			// create LogicTreePath and add to logicTreePaths
-			List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
-			double pathWeight = 1;
-			for (int i = 0; i < pathLen; i++) {
-				nodeList.add(path.get(i));
-				pathWeight = pathWeight * path.get(i).getUncertaintyWeight();
-			}
-			LogicTreePath p = new LogicTreePath(nodeList, pathWeight);
-			logicTreePaths.add(p);
-		} else {
-			for (Node<LogicTreeNode> n : node.getChildren()) {
-				computeAllLogicTreePaths(n, path, pathLen, logicTreePaths);
+		// ancestors of the node in the tree, following all the parents of
+		// the nodes up to the root node
+		Set<Node<LogicTreeNode>> ancestors = Collections
+				.newSetFromMap(new IdentityHashMap<Node<LogicTreeNode>, Boolean>());
+		List<Node<LogicTreeNode>> stack = new ArrayList<Node<LogicTreeNode>>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			Node<LogicTreeNode> n = stack.remove(stack.size() - 1);
+			if (ancestors.add(n)) {
+				stack.addAll(tree.getParents(n));
 			}
 		}
 
+		// pre-order traversal from the root node, restricted to the
+		// ancestors, with the nodes of the current path and the index of
+		// the next child to visit for each of them
+		List<LogicTreePath> paths = new ArrayList<LogicTreePath>();
+		List<Node<LogicTreeNode>> nodes = new ArrayList<Node<LogicTreeNode>>();
+		int[] childIndex = new int[16];
+		nodes.add(tree.getRootElement());
+		while (!nodes.isEmpty()) {
+			int depth = nodes.size() - 1;
+			Node<LogicTreeNode> n = nodes.get(depth);
+			if (n == node) {
+				LogicTreePath path = new LogicTreePath(
+						new ArrayList<LogicTreeNode>(nodes.size()), 1);
+				for (Node<LogicTreeNode> p : nodes) {
+					path.addNode(p.getData());
+				}
+				paths.add(path);
+				nodes.remove(depth);
+			} else if (childIndex[depth] < n.getNumberOfChildren()) {
+				Node<LogicTreeNode> child = n.getChildren().get(
+						childIndex[depth]++);
+				if (ancestors.contains(child)) {
+					if (depth + 1 == childIndex.length) {
+						childIndex = Arrays.copyOf(childIndex,
+								2 * childIndex.length);
+					}
+					childIndex[depth + 1] = 0;
+					nodes.add(child);
+				}
+			} else {
+				nodes.remove(depth);
+			}
+		}
+		return paths;
 	}
 
 	/**
-	 * Randomly sample n logic tree paths.
+	 * Returns an iterator over all logic tree paths from the root node. Paths
+	 * are created one at a time, when requested, so that the paths of trees
+	 * too large to be stored in a list can be processed. Algorithm adapted
+	 * from http://cslibrary.stanford.edu/110/BinaryTrees.html#java
+	 * (printPaths() solution), using an explicit stack instead of recursion.
 	 */
-	public List<LogicTreePath> sampleLogicTreePaths(
-			Tree<LogicTreeNode> logicTree, Random rn, int n) {
+	public Iterator<LogicTreePath> getLogicTreePathIterator(
+			Tree<LogicTreeNode> tree) {
+		return new LogicTreePathIterator(tree);
+	}
 
-		List<LogicTreePath> logicTreePaths = new ArrayList<LogicTreePath>();
+	/**
+	 * Returns an iterator over all logic tree paths from the root node,
+	 * computing path weights with the given arithmetic.
+	 */
+	public Iterator<LogicTreePath> getLogicTreePathIterator(
+			Tree<LogicTreeNode> tree, WeightArithmetic arithmetic) {
+		return new LogicTreePathIterator(tree, arithmetic);
+	}
 
-		for (int i = 0; i < n; i++) {
-			List<LogicTreeNode> nodeList = new ArrayList<LogicTreeNode>();
-			// add root node
-			nodeList.add(0, logicTree.getRootElement().data);
-			double pathWeight = 1;
-			LogicTreePath treePath = new LogicTreePath(nodeList, pathWeight);
-			sampleLogicTreePath(logicTree.getRootElement(), rn, treePath);
-			logicTreePaths.add(treePath);
-		}
-		return logicTreePaths;
+	/**
+	 * Returns a spliterator over all logic tree paths from the root node. The
+	 * spliterator splits the work at subtree boundaries, so that paths can be
+	 * enumerated and processed in parallel.
+	 */
+	public Spliterator<LogicTreePath> getLogicTreePathSpliterator(
+			Tree<LogicTreeNode> tree) {
+		return new LogicTreePathSpliterator(tree);
 	}
 
 	/**
-	 * Sample logic tree path recursively.
+	 * Returns a stream of all logic tree paths from the root node. If
+	 * parallel is true, the stream is parallel. In both cases the encounter
+	 * order is the order of {@link #computeAllLogicTreePaths(Tree)}.
 	 */
-	private void sampleLogicTreePath(Node<LogicTreeNode> node, Random rn,
-			LogicTreePath path) {
+	public Stream<LogicTreePath> getLogicTreePathStream(
+			Tree<LogicTreeNode> tree, boolean parallel) {
+		return StreamSupport.stream(getLogicTreePathSpliterator(tree),
+				parallel);
+	}
 
-		List<Node<LogicTreeNode>> children = node.getChildren();
+	/**
+	 * Returns an iterator over all logic tree paths in reflected (Gray code)
+	 * order, where consecutive paths differ in as few branching levels as
+	 * possible (see {@link LogicTreeGrayCodeIterator}).
+	 */
+	public LogicTreeGrayCodeIterator getLogicTreeGrayCodeIterator(
+			Tree<LogicTreeNode> tree) {
+		return new LogicTreeGrayCodeIterator(tree);
+	}
 
-		if (children.isEmpty()) {
+	/**
+	 * Evaluates a logic tree passing a state from each node to its children
+	 * (see {@link LogicTreeVisitor}). Nodes are visited in pre-order, so leaf
+	 * nodes are visited in the same order as the paths returned by
+	 * {@link #computeAllLogicTreePaths(Tree)}, and the path weights are the
+	 * same. Each node is visited once, so the evaluation takes a time
+	 * proportional to the number of nodes and not to the number of paths
+	 * times their length. The traversal uses an explicit stack, holding the
+	 * nodes still to be visited with the state and weight of their parent.
+	 */
+	public <S> void foldLogicTree(Tree<LogicTreeNode> tree, S initialState,
+			LogicTreeVisitor<S> visitor) {
+		if (tree.getRootElement() == null) {
 			return;
-		} else {
-			// randomly select a child
-			Node<LogicTreeNode> sampledNode = sampleChild(rn, children);
-			path.addNode(sampledNode.getData());
-			sampleLogicTreePath(sampledNode, rn, path);
+		}
+		List<Node<LogicTreeNode>> nodes = new ArrayList<Node<LogicTreeNode>>();
+		List<S> parentStates = new ArrayList<S>();
+		double[] parentWeights = new double[16];
+		nodes.add(tree.getRootElement());
+		parentStates.add(initialState);
+		parentWeights[0] = 1;
+		while (!nodes.isEmpty()) {
+			int last = nodes.size() - 1;
+			Node<LogicTreeNode> node = nodes.remove(last);
+			S state = visitor.visitNode(parentStates.remove(last), node.data);
+			double weight = parentWeights[last]
+					* node.data.getUncertaintyWeight();
+			int numChildren = node.getNumberOfChildren();
+			if (numChildren == 0) {
+				visitor.visitLeaf(state, weight);
+				continue;
+			}
+			if (last + numChildren > parentWeights.length) {
+				parentWeights = Arrays.copyOf(parentWeights, Math.max(
+						2 * parentWeights.length, last + numChildren));
+			}
+			// children are pushed in reverse order, so that they are visited
+			// in their order
+			for (int k = numChildren - 1; k >= 0; k--) {
+				parentWeights[nodes.size()] = weight;
+				nodes.add(node.getChildren().get(k));
+				parentStates.add(state);
+			}
 		}
 	}
 
 	/**
-	 * Sample child from a list of children. The sampling is done using the
-	 * inverse transform method (See for instance:
-	 * "Computational Statistics Handbook with Matlab", Wendy L. Martinez, Angel
-	 * R. Martinez, CHAPMAN&ALL 2002).
-	 */
-	private Node<LogicTreeNode> sampleChild(Random rn,
-			List<Node<LogicTreeNode>> children) {
-		// define probability mass function
-		double[] prob = new double[children.size()];
-		Node<LogicTreeNode>[] x = new Node[children.size()];
-		for (int i = 0; i < children.size(); i++) {
-			x[i] = children.get(i);
-			prob[i] = children.get(i).getData().getUncertaintyWeight();
-		}
-		// do the random samplings
-		Node<LogicTreeNode> sampledNode = null;
-		double u = rn.nextDouble();
-		double p = 0;
-		for (int j = 0; j < x.length; j++) {
-			p = p + prob[j];
-			if (u <= p) {
-				sampledNode = x[j];
-				break;
-			}
+	 * Returns the k logic tree paths with the largest weights, in decreasing
+	 * order of weight, without enumerating all the paths (see
+	 * {@link LogicTreePathSearch}).
+	 */
+	public List<LogicTreePath> computeTopLogicTreePaths(
+			Tree<LogicTreeNode> tree, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException(
+					"Number of paths must be non-negative: " + k);
 		}
-		return sampledNode;
+		return new LogicTreePathSearch(tree).next(k);
 	}
 
 	/**
-	 * Join logic trees.
+	 * Computes the logic tree paths skipping the subtrees whose prefix weight
+	 * (product of the weights from the root) is smaller than minPrefixWeight.
+	 * The weight of the skipped paths is reported with the paths (see
+	 * {@link LogicTreePathPruner#pruneByWeight(double)}).
+	 */
+	public PrunedLogicTreePaths computePrunedLogicTreePaths(
+			Tree<LogicTreeNode> tree, double minPrefixWeight) {
+		return new LogicTreePathPruner(tree).pruneByWeight(minPrefixWeight);
+	}
+
+	/**
+	 * Computes the heaviest logic tree paths covering the given fraction of
+	 * the total weight. The weight of the remaining paths is reported with the
+	 * paths (see {@link LogicTreePathPruner#pruneByCoverage(double)}).
+	 */
+	public PrunedLogicTreePaths computeCoveringLogicTreePaths(
+			Tree<LogicTreeNode> tree, double coverage) {
+		return new LogicTreePathPruner(tree).pruneByCoverage(coverage);
+	}
+
+	/**
+	 * Computes the number of logic tree paths, their total weight and the
+	 * marginal weight of each branch, without enumerating the paths (see
+	 * {@link LogicTreeStatistics}).
+	 */
+	public LogicTreeStatistics computeStatistics(Tree<LogicTreeNode> tree) {
+		return new LogicTreeStatistics(tree);
+	}
+
+	/**
+	 * Computes the number of logic tree paths, their total weight, the
+	 * probability and marginal weight of each node and the marginal weight of
+	 * each branch of a logic tree stored as a graph, without expanding the
+	 * shared subtrees (see {@link LogicTreeDagStatistics}).
+	 */
+	public LogicTreeDagStatistics computeStatistics(LogicTreeDag dag) {
+		return new LogicTreeDagStatistics(dag);
+	}
+
+	/**
+	 * Randomly sample n logic tree paths. The sampling is done using the
+	 * inverse transform method at each branching level (See for instance:
+	 * "Computational Statistics Handbook with Matlab", Wendy L. Martinez, Angel
+	 * R. Martinez, CHAPMAN&ALL 2002), with a {@link LogicTreeSampler}.
+	 * 
+	 * A new sampler is created from the logic tree by each call. Callers
+	 * sampling the same logic tree many times should create a
+	 * {@link LogicTreeSampler} once and sample it directly.
+	 */
+	public List<LogicTreePath> sampleLogicTreePaths(
+			Tree<LogicTreeNode> logicTree, Random rn, int n) {
+		return new LogicTreeSampler(logicTree).samplePaths(rn, n);
+	}
+
+	/**
+	 * Randomly sample n logic tree paths, each sample using its own random
+	 * number generator derived from the master seed and the sample index (see
+	 * {@link LogicTreeSampler#samplePath(long, long)}). The returned paths do
+	 * not depend on whether sampling is done in parallel or not.
+	 */
+	public List<LogicTreePath> sampleLogicTreePaths(
+			Tree<LogicTreeNode> logicTree, long seed, int n, boolean parallel) {
+		return new LogicTreeSampler(logicTree).samplePaths(seed, n, parallel);
+	}
+
+	/**
+	 * Sample n logic tree paths, drawing the random numbers used at each
+	 * branching level with the given method (see {@link SamplingMethod}).
+	 */
+	public List<LogicTreePath> sampleLogicTreePaths(
+			Tree<LogicTreeNode> logicTree, SamplingMethod method, long seed,
+			int n) {
+		return new LogicTreeSampler(logicTree).samplePaths(method, seed, n);
+	}
+
+	/**
+	 * Join logic trees. The root of each logic tree is added as a child to
+	 * the leaf nodes of the previous logic tree, so the logic trees are
+	 * modified. See {@link #getLogicTreeProduct(List)} for a representation
+	 * of the joined tree that does not modify the logic trees.
 	 */
 	public Tree<LogicTreeNode> joinTrees(List<Tree<LogicTreeNode>> trees) {
 		Tree<LogicTreeNode> tree = new Tree<LogicTreeNode>();
 		// set as root node, the root of the first logic tree
 		tree.setRootElement(trees.get(0).getRootElement());
 		// loop over the remaining logic trees, and add each tree to the leaf
-		// nodes
+		// nodes. The leaf nodes of the joined tree are the leaf nodes of the
+		// last added tree (which is shared by all the previous leaf nodes, so
+		// its leaf nodes are taken from the tree itself).
+		List<Node<LogicTreeNode>> leafNodes = trees.get(0).getLeafNodes();
 		for (int i = 1; i < trees.size(); i++) {
-			List<Node<LogicTreeNode>> leafNodes = tree.getLeafNodes();
+			List<Node<LogicTreeNode>> nextLeafNodes = trees.get(i)
+					.getLeafNodes();
 			for (Node<LogicTreeNode> node : leafNodes) {
 				node.addChild(trees.get(i).getRootElement());
 			}
+			leafNodes = nextLeafNodes;
 		}
 		return tree;
 	}
 
+	/**
+	 * Returns the product of logic trees, that is a representation of the
+	 * tree returned by {@link #joinTrees(List)} which does not modify nor join
+	 * the logic trees (see {@link LogicTreeProduct}).
+	 */
+	public LogicTreeProduct getLogicTreeProduct(List<Tree<LogicTreeNode>> trees) {
+		return new LogicTreeProduct(trees);
+	}
+
 }
\ No newline at end of file
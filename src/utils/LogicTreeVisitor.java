@@ -0,0 +1,33 @@
+package utils;
+
+import parser.LogicTreeNode;
+import tree.Tree;
+
+/**
+ * Callbacks used to evaluate a logic tree node by node (see
+ * {@link LogicTreeUtils#foldLogicTree(Tree, Object, LogicTreeVisitor)}).
+ * 
+ * A state is computed for each node from the state of its parent, so the
+ * work shared by all the paths going through a node (for instance loading a
+ * source model, and then applying a modification to it) is done once for the
+ * node and not once for each path.
+ * 
+ * @param <S>
+ *            type of the state passed from parent to children
+ */
+public interface LogicTreeVisitor<S> {
+
+	/**
+	 * Returns the state of a node, given the state of its parent (the initial
+	 * state for the root node). Called once for each node, parents being
+	 * visited before their children. Since the state of a node is passed to
+	 * all its children, it should not be modified by this method.
+	 */
+	S visitNode(S parentState, LogicTreeNode node);
+
+	/**
+	 * Called once for each leaf node, that is for each logic tree path, with
+	 * the state of the leaf node and the weight of the path.
+	 */
+	void visitLeaf(S state, double pathWeight);
+}
@@ -0,0 +1,52 @@
+package utils;
+
+import java.util.List;
+
+/**
+ * Result of an enumeration of the logic tree paths where part of the paths
+ * have been left out (see {@link LogicTreePathPruner}): the enumerated paths,
+ * and the total weight of the paths left out.
+ */
+public class PrunedLogicTreePaths {
+
+	private final List<LogicTreePath> paths;
+	private final double coveredWeight;
+	private final double totalWeight;
+
+	public PrunedLogicTreePaths(List<LogicTreePath> paths,
+			double coveredWeight, double totalWeight) {
+		this.paths = paths;
+		this.coveredWeight = coveredWeight;
+		this.totalWeight = totalWeight;
+	}
+
+	/**
+	 * Returns the enumerated paths.
+	 */
+	public List<LogicTreePath> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * Returns the sum of the weights of the enumerated paths.
+	 */
+	public double getCoveredWeight() {
+		return coveredWeight;
+	}
+
+	/**
+	 * Returns the sum of the weights of all the logic tree paths.
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Returns the sum of the weights of the paths left out. This is an upper
+	 * bound of the error made on any weighted mean over the logic tree paths
+	 * (of values between 0 and 1) computed from the enumerated paths only.
+	 */
+	public double getRemainingWeight() {
+		return Math.max(0, totalWeight - coveredWeight);
+	}
+}
@@ -0,0 +1,37 @@
+package utils;
+
+/**
+ * Methods used to draw the random numbers used to sample logic tree paths (see
+ * {@link LogicTreeSampler#samplePaths(SamplingMethod, long, int)}). Apart from
+ * {@link #STRATIFIED}, one random number is used for each branching level, the
+ * i-th branching level being the i-th dimension of the sampled points.
+ */
+public enum SamplingMethod {
+
+	/**
+	 * Independent random numbers (plain Monte Carlo sampling).
+	 */
+	MONTE_CARLO,
+
+	/**
+	 * Stratified sampling of the whole path. Each path is associated to an
+	 * interval in [0, 1) whose length is the path weight (paths being sorted
+	 * as in {@link LogicTreeUtils#computeAllLogicTreePaths(tree.Tree)}), and
+	 * the i-th of n samples is drawn from the interval [i/n, (i+1)/n). Each
+	 * path is therefore sampled a number of times differing by less than one
+	 * from n times its weight.
+	 */
+	STRATIFIED,
+
+	/**
+	 * Latin hypercube sampling: for each branching level, the n samples are
+	 * drawn from the n intervals [i/n, (i+1)/n) in random order.
+	 */
+	LATIN_HYPERCUBE,
+
+	/**
+	 * Halton low-discrepancy sequence, using a different prime base for each
+	 * branching level, with a random shift (modulo 1) for each branching level.
+	 */
+	HALTON
+}
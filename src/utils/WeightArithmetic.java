@@ -0,0 +1,37 @@
+package utils;
+
+/**
+ * Floating point arithmetic used to compute path weights and sums of weights.
+ */
+public enum WeightArithmetic {
+
+	/**
+	 * Path weights are products of the node weights, and weights are summed
+	 * one after the other, as in the original algorithms.
+	 */
+	PLAIN,
+
+	/**
+	 * Path weights are computed in log space, as sums of the logarithms of the
+	 * node weights, so that they do not underflow for deep trees (see
+	 * {@link LogWeightLogicTreePath}). Sums (of logarithms and of
+	 * weights) are compensated: the rounding error of each addition is
+	 * computed exactly and accumulated separately, so that the error of a sum
+	 * does not grow with the number of terms.
+	 */
+	COMPENSATED;
+
+	/**
+	 * Returns the rounding error of the floating point addition sum = a + b,
+	 * that is (a + b) - sum computed exactly (TwoSum algorithm). Returns 0 if
+	 * the sum is infinite.
+	 */
+	static double sumError(double a, double b, double sum) {
+		if (Double.isInfinite(sum)) {
+			return 0;
+		}
+		double bVirtual = sum - a;
+		double aVirtual = sum - bVirtual;
+		return (a - aVirtual) + (b - bVirtual);
+	}
+}
@@ -0,0 +1,142 @@
+package utils;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Accumulates weighted sums of curves (for instance hazard curves for a set
+ * of sites and intensity measure levels, stored in a single array), to
+ * compute their weighted mean over the logic tree paths.
+ * 
+ * Adding a curve is a single loop over the arrays, with no branches and no
+ * allocation, in the form (sum[i] += weight * curve[i]) that the JIT compiler
+ * vectorizes with SIMD instructions. Accumulating many curves in parallel is
+ * done with one accumulator for each part of the work (see
+ * {@link #accumulate(List, int, Function, boolean, boolean)}), so that threads
+ * never write to the same array, and the partial sums are added at the end.
+ * 
+ * Objects of this class are not thread-safe.
+ */
+public class WeightedCurveAccumulator {
+
+	private final double[] sums;
+
+	private double totalWeight;
+
+	public WeightedCurveAccumulator(int length) {
+		sums = new double[length];
+	}
+
+	/**
+	 * Adds a curve multiplied by the given weight.
+	 */
+	public void add(double weight, double[] curve) {
+		if (curve.length != sums.length) {
+			throw new IllegalArgumentException("Expected " + sums.length
+					+ " values, found " + curve.length);
+		}
+		double[] s = sums;
+		for (int i = 0; i < s.length; i++) {
+			s[i] += weight * curve[i];
+		}
+		totalWeight = totalWeight + weight;
+	}
+
+	/**
+	 * Adds the curve computed for a logic tree path, multiplied by the path
+	 * weight.
+	 */
+	public void add(LogicTreePath path, double[] curve) {
+		add(path.getPathWeight(), curve);
+	}
+
+	/**
+	 * Adds the sums of another accumulator.
+	 */
+	public void merge(WeightedCurveAccumulator other) {
+		if (other.sums.length != sums.length) {
+			throw new IllegalArgumentException("Expected " + sums.length
+					+ " values, found " + other.sums.length);
+		}
+		double[] s = sums;
+		double[] o = other.sums;
+		for (int i = 0; i < s.length; i++) {
+			s[i] += o[i];
+		}
+		totalWeight = totalWeight + other.totalWeight;
+	}
+
+	/**
+	 * Returns the weighted sums of the curves added. The returned array is
+	 * the one used by the accumulator.
+	 */
+	public double[] getSums() {
+		return sums;
+	}
+
+	/**
+	 * Returns the sum of the weights of the curves added.
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Returns the weighted mean of the curves added.
+	 */
+	public double[] getMean() {
+		double[] mean = new double[sums.length];
+		double inverse = 1 / totalWeight;
+		for (int i = 0; i < mean.length; i++) {
+			mean[i] = sums[i] * inverse;
+		}
+		return mean;
+	}
+
+	/**
+	 * Accumulates the curves of a list of logic tree paths, as returned by
+	 * {@link LogicTreeUtils#computeAllLogicTreePaths(tree.Tree)} or by
+	 * {@link LogicTreeUtils#sampleLogicTreePaths(tree.Tree, long, int, boolean)}.
+	 * 
+	 * @param paths
+	 *            logic tree paths
+	 * @param length
+	 *            length of the curves
+	 * @param curves
+	 *            returns the curve of a path (it must be thread-safe if
+	 *            parallel is true)
+	 * @param weighted
+	 *            if true curves are weighted with the path weights (all the
+	 *            paths of a tree), otherwise all the curves have weight 1
+	 *            (sampled paths)
+	 * @param parallel
+	 *            if true curves are computed and accumulated in parallel, each
+	 *            thread using its own partial accumulators
+	 */
+	public static WeightedCurveAccumulator accumulate(
+			List<LogicTreePath> paths, final int length,
+			final Function<? super LogicTreePath, double[]> curves,
+			final boolean weighted, boolean parallel) {
+		Stream<LogicTreePath> stream = parallel ? paths.parallelStream()
+				: paths.stream();
+		return stream.collect(new Supplier<WeightedCurveAccumulator>() {
+			public WeightedCurveAccumulator get() {
+				return new WeightedCurveAccumulator(length);
+			}
+		}, new BiConsumer<WeightedCurveAccumulator, LogicTreePath>() {
+			public void accept(WeightedCurveAccumulator accumulator,
+					LogicTreePath path) {
+				accumulator.add(weighted ? path.getPathWeight() : 1,
+						curves.apply(path));
+			}
+		}, new BiConsumer<WeightedCurveAccumulator, WeightedCurveAccumulator>() {
+			public void accept(WeightedCurveAccumulator accumulator,
+					WeightedCurveAccumulator other) {
+				accumulator.merge(other);
+			}
+		});
+	}
+}
@@ -0,0 +1,265 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Sketch of the distribution of a stream of weighted values, from which
+ * weighted quantiles are estimated with bounded memory (a merging t-digest).
+ * 
+ * The distribution is summarized by a sorted list of centroids (a mean and a
+ * weight). Added values are first stored in a buffer; when the buffer is full
+ * they are merged with the centroids, and adjacent centroids are combined as
+ * long as the combined centroid is small enough. The maximum size of a
+ * centroid depends on its position q in the distribution (through the scale
+ * function k(q) = compression / (2 pi) * asin(2q - 1)), so that centroids are
+ * smaller close to the tails, where quantiles are estimated more accurately.
+ * The number of centroids is at most compression + 1, and the memory used
+ * does not depend on the number of values added.
+ * 
+ * Sketches built from different parts of a stream (for instance by different
+ * threads or workers) can be merged with {@link #merge(WeightedQuantileSketch)}.
+ * Objects of this class are not thread-safe.
+ */
+public class WeightedQuantileSketch {
+
+	private final double compression;
+
+	// centroids sorted by mean
+	private double[] means;
+	private double[] weights;
+	private int numCentroids;
+
+	// values not merged with the centroids yet
+	private final double[] bufferValues;
+	private final double[] bufferWeights;
+	private int bufferSize;
+
+	private double totalWeight;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public WeightedQuantileSketch(double compression) {
+		if (compression < 1) {
+			throw new IllegalArgumentException(
+					"Compression must be at least 1: " + compression);
+		}
+		this.compression = compression;
+		int capacity = (int) Math.ceil(compression) + 2;
+		means = new double[capacity];
+		weights = new double[capacity];
+		bufferValues = new double[4 * capacity];
+		bufferWeights = new double[bufferValues.length];
+	}
+
+	public double getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Returns the sum of the weights of the values added.
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Adds a value with the given weight. Values with weight 0 are ignored.
+	 */
+	public void add(double value, double weight) {
+		if (weight < 0 || Double.isNaN(weight)) {
+			throw new IllegalArgumentException(
+					"Weight must be non-negative: " + weight);
+		}
+		if (weight == 0) {
+			return;
+		}
+		if (bufferSize == bufferValues.length) {
+			compress();
+		}
+		bufferValues[bufferSize] = value;
+		bufferWeights[bufferSize] = weight;
+		bufferSize++;
+		totalWeight = totalWeight + weight;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds the values summarized by another sketch, that is its centroids and
+	 * its buffered values. The other sketch is not modified.
+	 */
+	public void merge(WeightedQuantileSketch other) {
+		double[] otherMeans = other.means;
+		double[] otherWeights = other.weights;
+		double[] otherValues = other.bufferValues;
+		double[] otherValueWeights = other.bufferWeights;
+		int otherNumCentroids = other.numCentroids;
+		int otherBufferSize = other.bufferSize;
+		if (other == this) {
+			// adding values changes the arrays read
+			otherMeans = Arrays.copyOf(otherMeans, otherNumCentroids);
+			otherWeights = Arrays.copyOf(otherWeights, otherNumCentroids);
+			otherValues = Arrays.copyOf(otherValues, otherBufferSize);
+			otherValueWeights = Arrays.copyOf(otherValueWeights,
+					otherBufferSize);
+		}
+		double otherMin = other.min;
+		double otherMax = other.max;
+		for (int i = 0; i < otherNumCentroids; i++) {
+			add(otherMeans[i], otherWeights[i]);
+		}
+		for (int i = 0; i < otherBufferSize; i++) {
+			add(otherValues[i], otherValueWeights[i]);
+		}
+		min = Math.min(min, otherMin);
+		max = Math.max(max, otherMax);
+	}
+
+	/**
+	 * Returns the estimated value below which lies the fraction q of the total
+	 * weight (NaN if no value has been added).
+	 */
+	public double getQuantile(double q) {
+		if (q < 0 || q > 1) {
+			throw new IllegalArgumentException(
+					"Quantile must be between 0 and 1: " + q);
+		}
+		compress();
+		if (numCentroids == 0) {
+			return Double.NaN;
+		}
+		if (numCentroids == 1) {
+			return means[0];
+		}
+		// the weight of each centroid is centered on its mean: interpolate
+		// between the centers of the two centroids around the target weight
+		double target = q * totalWeight;
+		double center = weights[0] / 2;
+		if (target <= center) {
+			return interpolate(min, means[0], target / center);
+		}
+		for (int i = 1; i < numCentroids; i++) {
+			double nextCenter = center + (weights[i - 1] + weights[i]) / 2;
+			if (target <= nextCenter) {
+				return interpolate(means[i - 1], means[i], (target - center)
+						/ (nextCenter - center));
+			}
+			center = nextCenter;
+		}
+		double lastWeight = weights[numCentroids - 1] / 2;
+		return interpolate(means[numCentroids - 1], max, Math.min(1,
+				(target - center) / lastWeight));
+	}
+
+	/**
+	 * Merges the buffered values with the centroids. The arrays in which they
+	 * are sorted together are allocated by each call rather than kept with
+	 * the sketch, so that idle sketches only keep their centroids and buffer:
+	 * when the buffer is full, their cost is spread over the values buffered.
+	 */
+	private void compress() {
+		if (bufferSize == 0) {
+			return;
+		}
+		sort(bufferValues, bufferWeights, 0, bufferSize - 1);
+
+		// merge the sorted centroids and buffered values
+		int n = numCentroids + bufferSize;
+		double[] sortedMeans = new double[n];
+		double[] sortedWeights = new double[n];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < n; k++) {
+			if (j == bufferSize
+					|| (i < numCentroids && means[i] <= bufferValues[j])) {
+				sortedMeans[k] = means[i];
+				sortedWeights[k] = weights[i];
+				i++;
+			} else {
+				sortedMeans[k] = bufferValues[j];
+				sortedWeights[k] = bufferWeights[j];
+				j++;
+			}
+		}
+		bufferSize = 0;
+
+		// combine adjacent centroids while they span less than one unit of
+		// the scale function
+		numCentroids = 0;
+		double mean = sortedMeans[0];
+		double weight = sortedWeights[0];
+		double weightSoFar = 0;
+		double kLeft = scale(0);
+		for (int k = 1; k < n; k++) {
+			double proposedWeight = weight + sortedWeights[k];
+			if (scale((weightSoFar + proposedWeight) / totalWeight) - kLeft <= 1) {
+				mean = mean + (sortedMeans[k] - mean) * sortedWeights[k]
+						/ proposedWeight;
+				weight = proposedWeight;
+			} else {
+				addCentroid(mean, weight);
+				weightSoFar = weightSoFar + weight;
+				kLeft = scale(weightSoFar / totalWeight);
+				mean = sortedMeans[k];
+				weight = sortedWeights[k];
+			}
+		}
+		addCentroid(mean, weight);
+	}
+
+	private void addCentroid(double mean, double weight) {
+		if (numCentroids == means.length) {
+			means = Arrays.copyOf(means, 2 * numCentroids);
+			weights = Arrays.copyOf(weights, 2 * numCentroids);
+		}
+		means[numCentroids] = mean;
+		weights[numCentroids] = weight;
+		numCentroids++;
+	}
+
+	private double scale(double q) {
+		return compression / (2 * Math.PI)
+				* Math.asin(2 * Math.min(Math.max(q, 0), 1) - 1);
+	}
+
+	private static double interpolate(double a, double b, double t) {
+		return a + (b - a) * t;
+	}
+
+	/**
+	 * Sorts keys[lo..hi], and values in the same order (quicksort).
+	 */
+	private static void sort(double[] keys, double[] values, int lo, int hi) {
+		while (lo < hi) {
+			double pivot = keys[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (keys[i] < pivot) {
+					i++;
+				}
+				while (keys[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					double tmp = keys[i];
+					keys[i] = keys[j];
+					keys[j] = tmp;
+					tmp = values[i];
+					values[i] = values[j];
+					values[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			// recurse on the smaller part, loop on the larger one
+			if (j - lo < hi - i) {
+				sort(keys, values, lo, j);
+				lo = i;
+			} else {
+				sort(keys, values, i, hi);
+				hi = j;
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import tree.Node;
+import tree.Tree;
+
+public class CompactLogicTreeTest {
+
+	// test file containing symmetric logic tree defining source model
+	// epistemic uncertainties
+	public static final String SYMMETRIC_LT_SRC_MODEL_TEST_FILE = "symmetric-logic-tree-source-model.xml";
+
+	// test file containing logic trees defining gmpe
+	// epistemic uncertainties
+	public static final String LT_GMPE_TEST_FILE = "logic-tree-gmpe.xml";
+
+	// test file containing non-symmetric logic tree defining source model
+	// epistemic uncertainties
+	public static final String NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE = "non-symmetric-logic-tree-source-model.xml";
+
+	private static final String[] FILES = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+			NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, LT_GMPE_TEST_FILE };
+
+	@Before
+	public void setUp() {
+		System.setProperty("openquake.nrml.schema", new File(
+				"docs/schema/nrml.xsd").getAbsolutePath());
+	}
+
+	// check that the compact representation of a tree has the same structure
+	// and content of the tree
+	@Test
+	public void compactLogicTreeFromTreeTest() {
+		for (String file : FILES) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			CompactLogicTree compactTree = new CompactLogicTree(tree);
+			assertEquals(tree.toList().size(), compactTree.getNumberOfNodes());
+			assertEquals(tree.getLeafNodes().size(),
+					compactTree.getNumberOfLeafNodes());
+			assertSameTree(tree.getRootElement(), compactTree,
+					compactTree.getRoot());
+		}
+	}
+
+	// check that the compact logic tree returned by the parser has the same
+	// structure and content of the tree returned by the parser
+	@Test
+	public void compactLogicTreeFromParserTest() {
+		for (String file : FILES) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			CompactLogicTree compactTree = new LogicTreeParser(file)
+					.parseCompact();
+			assertEquals(tree.toList().size(), compactTree.getNumberOfNodes());
+			assertSameTree(tree.getRootElement(), compactTree,
+					compactTree.getRoot());
+		}
+	}
+
+	// check that the branch dictionary contains one entry for each branch in
+	// the file (plus the root). In SYMMETRIC_LT_SRC_MODEL_TEST_FILE there are
+	// 2 + 3 + 3 branches.
+	@Test
+	public void compactLogicTreeDictionaryTest() {
+		CompactLogicTree compactTree = new LogicTreeParser(
+				SYMMETRIC_LT_SRC_MODEL_TEST_FILE).parseCompact();
+		assertEquals(27, compactTree.getNumberOfNodes());
+		assertEquals(9, compactTree.getNumberOfBranches());
+	}
+
+	// check conversion back to a tree
+	@Test
+	public void compactLogicTreeToTreeTest() {
+		for (String file : FILES) {
+			CompactLogicTree compactTree = new LogicTreeParser(file)
+					.parseCompact();
+			Tree<LogicTreeNode> tree = compactTree.toTree();
+			assertSameTree(tree.getRootElement(), compactTree,
+					compactTree.getRoot());
+		}
+	}
+
+	// check that a compact tree node has the same structure and content of a
+	// tree node
+	private static void assertSameTree(Node<LogicTreeNode> expected,
+			CompactLogicTree tree, int node) {
+		assertEquals(expected.getData(), tree.getData(node));
+		assertEquals(expected.getData().getUncertaintyWeight(),
+				tree.getWeight(node), 0.0);
+		assertEquals(expected.getNumberOfChildren(),
+				tree.getNumberOfChildren(node));
+		assertTrue(tree.isLeaf(node) == expected.getChildren().isEmpty());
+		for (int k = 0; k < expected.getNumberOfChildren(); k++) {
+			int child = tree.getChild(node, k);
+			assertEquals(node, tree.getParent(child));
+			assertSameTree(expected.getChildren().get(k), tree, child);
+		}
+	}
+}
@@ -1,9 +1,11 @@
 package parser;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -306,4 +308,70 @@ public class LogicTreeParserTest {
 		}
 
 	}
+
+	// check that the streaming parser returns the same logic trees as the
+	// dom4j based parser.
+	@Test
+	public void streamingParserTest() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, LT_GMPE_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> expected = new LogicTreeParser(file).parse();
+			Tree<LogicTreeNode> computed = new LogicTreeParser(file)
+					.parseStreaming();
+			assertSameTree(expected.getRootElement(),
+					computed.getRootElement());
+		}
+	}
+
+	// check that parsers created by a LogicTreeParserFactory return the same
+	// logic trees as the default parser, and that parse times are recorded.
+	@Test
+	public void parserFactoryTest() {
+		LogicTreeParserFactory factory = new LogicTreeParserFactory();
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, LT_GMPE_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> expected = new LogicTreeParser(file).parse();
+			assertSameTree(expected.getRootElement(), factory.newParser(file)
+					.parse().getRootElement());
+			assertSameTree(expected.getRootElement(), factory.newParser(file)
+					.parseStreaming().getRootElement());
+		}
+		assertEquals(2 * files.length, factory.getParseCount());
+		assertTrue(factory.getSchemaLoadTime() > 0);
+		assertTrue(factory.getParseTime() > 0);
+	}
+
+	// check that the nodes created from the same branch share the same
+	// LogicTreeNode instance. In SYMMETRIC_LT_SRC_MODEL_TEST_FILE the branches
+	// of the second branching level are attached to both nodes of the first
+	// branching level.
+	@Test
+	public void sharedLogicTreeNodesTest() {
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE).parse());
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parseStreaming());
+		for (Tree<LogicTreeNode> tree : trees) {
+			List<Node<LogicTreeNode>> children = tree.getRootElement()
+					.getChildren();
+			for (int i = 0; i < 3; i++) {
+				assertSame(children.get(0).getChildren().get(i).getData(),
+						children.get(1).getChildren().get(i).getData());
+			}
+		}
+	}
+
+	// check that two trees have the same structure and content
+	private static void assertSameTree(Node<LogicTreeNode> expected,
+			Node<LogicTreeNode> computed) {
+		assertEquals(expected.getData(), computed.getData());
+		assertEquals(expected.getNumberOfChildren(),
+				computed.getNumberOfChildren());
+		for (int i = 0; i < expected.getNumberOfChildren(); i++) {
+			assertSameTree(expected.getChildren().get(i), computed
+					.getChildren().get(i));
+		}
+	}
 }
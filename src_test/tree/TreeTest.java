@@ -0,0 +1,280 @@
+package tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TreeTest {
+
+	// check node order of the traversals on the tree:
+	// a(b(d,e),c(f(g)))
+	@Test
+	public void traversalOrderTest() {
+		Tree<String> tree = getTestTree();
+		assertEquals("abdecfg", toString(tree.preOrderIterator()));
+		assertEquals("debgfca", toString(tree.postOrderIterator()));
+		assertEquals("deg", toString(tree.leafIterator()));
+
+		final StringBuilder sb = new StringBuilder();
+		tree.accept(new TreeVisitor<String>() {
+			public void visit(Node<String> node, int depth) {
+				sb.append(node.getData()).append(depth);
+			}
+		});
+		assertEquals("a0b1d2e2c1f2g3", sb.toString());
+
+		assertEquals(7, tree.getNumberOfNodes());
+		assertEquals(tree.toList().size(), tree.getNumberOfNodes());
+		assertEquals(3, tree.getLeafNodes().size());
+	}
+
+	// check that traversals of an empty tree and of a tree with a single
+	// node are correct.
+	@Test
+	public void smallTreesTest() {
+		Tree<String> tree = new Tree<String>();
+		assertFalse(tree.preOrderIterator().hasNext());
+		assertFalse(tree.postOrderIterator().hasNext());
+		assertFalse(tree.leafIterator().hasNext());
+		assertEquals(0, tree.getNumberOfNodes());
+
+		tree.setRootElement(new Node<String>("a"));
+		assertEquals("a", toString(tree.preOrderIterator()));
+		assertEquals("a", toString(tree.postOrderIterator()));
+		assertEquals("a", toString(tree.leafIterator()));
+	}
+
+	// check that traversing a very deep tree does not overflow the stack.
+	@Test
+	public void deepTreeTest() {
+		int depth = 100000;
+		Tree<String> tree = new Tree<String>();
+		Node<String> node = new Node<String>("n");
+		tree.setRootElement(node);
+		for (int i = 0; i < depth; i++) {
+			Node<String> child = new Node<String>("n");
+			node.addChild(child);
+			node = child;
+		}
+		assertEquals(depth + 1, tree.toList().size());
+		assertSame(node, tree.getLeafNodes().get(0));
+		Iterator<Node<String>> i = tree.postOrderIterator();
+		assertSame(node, i.next());
+	}
+
+	// check that leaf nodes share the same empty children list.
+	@Test(expected = UnsupportedOperationException.class)
+	public void leafChildrenTest() {
+		Node<String> a = new Node<String>("a");
+		Node<String> b = new Node<String>("b");
+		assertSame(a.getChildren(), b.getChildren());
+		a.getChildren().add(b);
+	}
+
+	// check that the number of nodes, the depth and the node lists are
+	// cached, and computed again after the tree has been changed.
+	@Test
+	public void cachedStructureTest() {
+		Tree<String> tree = getTestTree();
+		List<Node<String>> leafNodes = tree.getLeafNodes();
+		assertSame(leafNodes, tree.getLeafNodes());
+		assertSame(tree.toList(), tree.toList());
+		assertSame(tree.getNodesAtLevel(2), tree.getNodesAtLevel(2));
+		assertEquals(3, tree.getDepth());
+		assertEquals(7, tree.getNumberOfNodes());
+		assertEquals("bc", toString(tree.getNodesAtLevel(1).iterator()));
+		assertEquals("def", toString(tree.getNodesAtLevel(2).iterator()));
+		assertEquals(0, tree.getNodesAtLevel(4).size());
+
+		// add a child to leaf node g
+		long modificationCount = tree.getModificationCount();
+		leafNodes.get(2).addChild(new Node<String>("h"));
+		assertTrue(tree.getModificationCount() > modificationCount);
+		assertEquals("deg", toString(leafNodes.iterator()));
+		assertEquals("deh", toString(tree.getLeafNodes().iterator()));
+		assertEquals("h", toString(tree.getNodesAtLevel(4).iterator()));
+		assertEquals(4, tree.getDepth());
+		assertEquals(8, tree.getNumberOfNodes());
+
+		// insert and remove a child of the root element
+		tree.getRootElement().insertChildAt(0, new Node<String>("i"));
+		assertEquals("ideh", toString(tree.getLeafNodes().iterator()));
+		assertEquals(9, tree.getNumberOfNodes());
+		tree.getRootElement().removeChildAt(0);
+		assertEquals("deh", toString(tree.getLeafNodes().iterator()));
+		assertEquals(8, tree.getNumberOfNodes());
+
+		// change the root element
+		tree.setRootElement(new Node<String>("j"));
+		assertEquals(0, tree.getDepth());
+		assertEquals("j", toString(tree.getLeafNodes().iterator()));
+		assertEquals(-1, new Tree<String>().getDepth());
+	}
+
+	// check that cached node lists cannot be modified.
+	@Test(expected = UnsupportedOperationException.class)
+	public void cachedListsTest() {
+		Tree<String> tree = getTestTree();
+		tree.getLeafNodes().add(new Node<String>("h"));
+	}
+
+	// check that changes made to two trees sharing a subtree are seen by
+	// both trees, and that changes made to an unrelated tree are not.
+	@Test
+	public void sharedSubtreeModificationCountTest() {
+		Tree<String> first = getTestTree();
+		Node<String> b = first.getRootElement().getChildren().get(0);
+		Node<String> k = new Node<String>("k");
+		k.addChild(b);
+		Tree<String> second = new Tree<String>();
+		second.setRootElement(k);
+		assertEquals(4, second.getNumberOfNodes());
+		assertEquals(7, first.getNumberOfNodes());
+
+		long firstCount = first.getModificationCount();
+		long secondCount = second.getModificationCount();
+		b.getChildren().get(0).addChild(new Node<String>("l"));
+		assertTrue(first.getModificationCount() > firstCount);
+		assertTrue(second.getModificationCount() > secondCount);
+		assertEquals(5, second.getNumberOfNodes());
+		assertEquals(8, first.getNumberOfNodes());
+
+		Tree<String> third = getTestTree();
+		long thirdCount = third.getModificationCount();
+		secondCount = second.getModificationCount();
+		k.addChild(new Node<String>("m"));
+		assertTrue(second.getModificationCount() > secondCount);
+		assertEquals(thirdCount, third.getModificationCount());
+		assertEquals(6, second.getNumberOfNodes());
+		assertEquals(8, first.getNumberOfNodes());
+	}
+
+	// check that the parents and depths of the nodes are updated when
+	// children are added, inserted, removed or set.
+	@Test
+	public void parentsTest() {
+		Tree<String> tree = getTestTree();
+		Node<String> a = tree.getRootElement();
+		Node<String> g = tree.getLeafNodes().get(2);
+		assertEquals(0, tree.getParents(a).size());
+		assertEquals(0, tree.getDepth(a));
+		assertEquals(3, tree.getDepth(g));
+		assertEquals("acfg", toString(tree.getPathFromRoot(g).iterator()));
+
+		// insert a new node between a and c
+		Node<String> c = a.getChildren().get(1);
+		a.removeChildAt(1);
+		assertEquals(0, tree.getNumberOfPathsFromRoot(c));
+		Node<String> k = new Node<String>("k");
+		k.addChild(c);
+		a.insertChildAt(1, k);
+		assertSame(a, tree.getParents(k).get(0));
+		assertEquals("akcfg", toString(tree.getPathFromRoot(g).iterator()));
+		assertEquals(4, tree.getDepth(g));
+
+		// a node with two parents
+		Node<String> b = a.getChildren().get(0);
+		Node<String> f = c.getChildren().get(0);
+		b.addChild(f);
+		assertEquals(2, tree.getParents(f).size());
+		assertSame(b, tree.getParents(f).get(0));
+		assertSame(c, tree.getParents(f).get(1));
+
+		// setting children replaces the parents
+		c.setChildren(new ArrayList<Node<String>>());
+		assertEquals(1, tree.getParents(f).size());
+		List<Node<String>> children = new ArrayList<Node<String>>();
+		children.add(new Node<String>("l"));
+		c.setChildren(children);
+		assertSame(c, tree.getParents(children.get(0)).get(0));
+	}
+
+	// check that nodes which are not in the tree have no parents.
+	@Test(expected = IllegalArgumentException.class)
+	public void parentsOfNodeNotInTreeTest() {
+		Tree<String> tree = getTestTree();
+		tree.getParents(new Node<String>("h"));
+	}
+
+	// check the depth, number of paths and path from the root element of the
+	// nodes of a tree, computed following all the parents of the nodes, and
+	// their update when the tree is changed.
+	@Test
+	public void pathsFromRootTest() {
+		Tree<String> tree = getTestTree();
+		Node<String> a = tree.getRootElement();
+		Node<String> b = a.getChildren().get(0);
+		Node<String> g = tree.getLeafNodes().get(2);
+		Node<String> f = tree.getParents(g).get(0);
+		assertEquals(0, tree.getDepth(a));
+		assertEquals(3, tree.getDepth(g));
+		assertEquals(1, tree.getNumberOfPathsFromRoot(g));
+		assertEquals(1.0, tree.getPrefixWeight(g), 0);
+		assertEquals("acfg", toString(tree.getPathFromRoot(g).iterator()));
+
+		// g is reached through f and b, at different depths
+		b.addChild(g);
+		assertEquals(-1, tree.getDepth(g));
+		assertEquals(2, tree.getDepth(f));
+		assertEquals(2, tree.getNumberOfPathsFromRoot(g));
+		assertEquals(2.0, tree.getPrefixWeight(g), 0);
+		b.removeChildAt(2);
+		assertEquals(1, tree.getNumberOfPathsFromRoot(g));
+		assertEquals("acfg", toString(tree.getPathFromRoot(g).iterator()));
+
+		// g is reached through c and b, at the same depth
+		b.addChild(f);
+		assertEquals(3, tree.getDepth(g));
+		assertEquals(2, tree.getNumberOfPathsFromRoot(g));
+
+		// g is reached through b only
+		a.getChildren().get(1).removeChildAt(0);
+		assertEquals(1, tree.getNumberOfPathsFromRoot(g));
+		assertEquals("abfg", toString(tree.getPathFromRoot(g).iterator()));
+
+		// nodes removed from the tree
+		b.removeChildAt(2);
+		assertEquals(0, tree.getNumberOfPathsFromRoot(g));
+		assertEquals(0.0, tree.getPrefixWeight(g), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sharedNodeTreePathFromRootTest() {
+		Tree<String> tree = getTestTree();
+		Node<String> a = tree.getRootElement();
+		Node<String> g = tree.getLeafNodes().get(2);
+		a.getChildren().get(0).addChild(tree.getParents(g).get(0));
+		tree.getPathFromRoot(g);
+	}
+
+	private static Tree<String> getTestTree() {
+		Node<String> a = new Node<String>("a");
+		Node<String> b = new Node<String>("b");
+		Node<String> c = new Node<String>("c");
+		Node<String> f = new Node<String>("f");
+		a.addChild(b);
+		a.addChild(c);
+		b.addChild(new Node<String>("d"));
+		b.addChild(new Node<String>("e"));
+		c.addChild(f);
+		f.addChild(new Node<String>("g"));
+		Tree<String> tree = new Tree<String>();
+		tree.setRootElement(a);
+		return tree;
+	}
+
+	private static String toString(Iterator<Node<String>> i) {
+		StringBuilder sb = new StringBuilder();
+		while (i.hasNext()) {
+			sb.append(i.next().getData());
+		}
+		return sb.toString();
+	}
+}
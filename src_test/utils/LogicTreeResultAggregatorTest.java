@@ -0,0 +1,124 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import parser.LogicTreeNode;
+import parser.LogicTreeParser;
+import tree.Tree;
+
+public class LogicTreeResultAggregatorTest {
+
+	// test file containing non-symmetric logic tree defining source model
+	// epistemic uncertainties
+	public static final String NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE = "non-symmetric-logic-tree-source-model.xml";
+
+	@Before
+	public void setUp() {
+		System.setProperty("openquake.nrml.schema", new File(
+				"docs/schema/nrml.xsd").getAbsolutePath());
+	}
+
+	// check weighted mean and quantiles of results computed for all the
+	// logic tree paths against the values computed from the sorted results.
+	@Test
+	public void aggregateLogicTreePathResultsTest() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = new LogicTreeUtils()
+				.computeAllLogicTreePaths(tree);
+
+		LogicTreeResultAggregator aggregator = new LogicTreeResultAggregator(
+				2, 100);
+		double[] expectedMean = new double[2];
+		for (int i = 0; i < paths.size(); i++) {
+			double[] values = { i, 2.0 * i };
+			aggregator.add(paths.get(i), values);
+			double weight = paths.get(i).getPathWeight();
+			expectedMean[0] = expectedMean[0] + weight * values[0];
+			expectedMean[1] = expectedMean[1] + weight * values[1];
+		}
+		assertEquals(paths.size(), aggregator.getCount());
+		assertEquals(1.0, aggregator.getTotalWeight(), 1e-12);
+		assertEquals(expectedMean[0], aggregator.getMean()[0], 1e-12);
+		assertEquals(expectedMean[1], aggregator.getMean()[1], 1e-12);
+
+		// with fewer values than the compression each value is a centroid,
+		// so the median lies between the values around half of the weight
+		double weight = 0.0;
+		int median = 0;
+		while (weight + paths.get(median).getPathWeight() < 0.5) {
+			weight = weight + paths.get(median).getPathWeight();
+			median++;
+		}
+		double estimatedMedian = aggregator.getQuantile(0.5)[0];
+		assertEquals(median, estimatedMedian, 1.0);
+	}
+
+	// check quantiles of a large stream of weighted values, and that merging
+	// sketches of two halves of the stream gives the same accuracy.
+	@Test
+	public void quantileSketchTest() {
+		Random rn = new Random(123);
+		int n = 100000;
+		double[] values = new double[n];
+		WeightedQuantileSketch sketch = new WeightedQuantileSketch(100);
+		WeightedQuantileSketch firstHalf = new WeightedQuantileSketch(100);
+		WeightedQuantileSketch secondHalf = new WeightedQuantileSketch(100);
+		for (int i = 0; i < n; i++) {
+			// values uniform in [0, 1), each added twice with weights 1 and 3
+			// in random order, so the distribution is uniform
+			values[i] = rn.nextDouble();
+			sketch.add(values[i], 1.0);
+			sketch.add(values[i], 3.0);
+			WeightedQuantileSketch half = i < n / 2 ? firstHalf : secondHalf;
+			half.add(values[i], 1.0);
+			half.add(values[i], 3.0);
+		}
+		firstHalf.merge(secondHalf);
+		Arrays.sort(values);
+		double[] qs = { 0.001, 0.01, 0.1, 0.5, 0.9, 0.99, 0.999 };
+		for (double q : qs) {
+			double expected = values[(int) (q * n)];
+			assertEquals(expected, sketch.getQuantile(q), 0.005);
+			assertEquals(expected, firstHalf.getQuantile(q), 0.005);
+		}
+		assertEquals(4.0 * n, firstHalf.getTotalWeight(), 1e-6);
+	}
+
+	// check that merging a sketch does not change it: values added to the
+	// merged sketch afterwards give the same quantiles as for a sketch which
+	// has not been merged.
+	@Test
+	public void quantileSketchMergeTest() {
+		Random rn = new Random(123);
+		WeightedQuantileSketch sketch = new WeightedQuantileSketch(10);
+		WeightedQuantileSketch other = new WeightedQuantileSketch(10);
+		WeightedQuantileSketch copy = new WeightedQuantileSketch(10);
+		for (int i = 0; i < 1000; i++) {
+			double value = rn.nextDouble();
+			other.add(value, 1.0);
+			copy.add(value, 1.0);
+		}
+		sketch.merge(other);
+		assertEquals(1000.0, sketch.getTotalWeight(), 1e-9);
+		for (int i = 0; i < 100; i++) {
+			double value = rn.nextDouble();
+			other.add(value, 2.0);
+			copy.add(value, 2.0);
+		}
+		double[] qs = { 0.01, 0.1, 0.5, 0.9, 0.99 };
+		for (double q : qs) {
+			assertEquals(copy.getQuantile(q), other.getQuantile(q), 0.0);
+			assertEquals(q, sketch.getQuantile(q), 0.05);
+		}
+	}
+}
@@ -8,14 +8,21 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import parser.FactorizedLogicTree;
+import parser.LogicTreeDag;
 import parser.LogicTreeNode;
 import parser.LogicTreeParser;
+import tree.Node;
 import tree.Tree;
 import utils.LogicTreePath;
 import utils.LogicTreeUtils;
@@ -133,6 +140,33 @@ public class LogicTreeUtilsTest {
 
 	}
 
+	// check that sampling a logic tree after its structure has been changed
+	// samples the changed logic tree.
+	@Test
+	public void checkLogicTreePathSamplingChangedTree() {
+		Tree<LogicTreeNode> tree = new LogicTreeParser(GMPE_LT_TEST_FILE)
+				.parse();
+		long seed = 123456789;
+		int n = 100;
+		List<LogicTreePath> sampledPaths = treeProcessor.sampleLogicTreePaths(
+				tree, new Random(seed), n);
+		assertEquals(new LogicTreeSampler(tree).samplePaths(new Random(seed),
+				n), sampledPaths);
+		int pathLength = sampledPaths.get(0).getPath().size();
+
+		// add the branches of a second logic tree to the leaf nodes
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(tree);
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		treeProcessor.joinTrees(trees);
+		sampledPaths = treeProcessor.sampleLogicTreePaths(tree,
+				new Random(seed), n);
+		assertEquals(new LogicTreeSampler(tree).samplePaths(new Random(seed),
+				n), sampledPaths);
+		assertTrue(sampledPaths.get(0).getPath().size() > pathLength);
+	}
+
 	// check logic tree path sampling algorithm. That is count number of times
 	// a path is sampled and compute the 'observed' probability (number of
 	// times observed / total number of path sampled) and compare with expected
@@ -195,6 +229,828 @@ public class LogicTreeUtilsTest {
 
 	}
 
+	// check that the path iterator returns the expected logic tree paths, one
+	// at a time, and in the same order as computeAllLogicTreePaths.
+	@Test
+	public void checkLogicTreePathIterator() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+
+		List<LogicTreePath> expectedPaths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+		Iterator<LogicTreePath> iterator = treeProcessor
+				.getLogicTreePathIterator(tree);
+		List<LogicTreePath> computedPaths = new ArrayList<LogicTreePath>();
+		while (iterator.hasNext()) {
+			computedPaths.add(iterator.next());
+		}
+		assertEquals(expectedPaths, computedPaths);
+		assertTrue(new HashSet<LogicTreePath>(computedPaths)
+				.equals(getExpectedPathsForNonSymmetricLogicTree()));
+	}
+
+	// check that the path iterator throws an exception when no path is left
+	@Test(expected = NoSuchElementException.class)
+	public void checkLogicTreePathIteratorEnd() {
+		LogicTreeParser parser = new LogicTreeParser(GMPE_LT_TEST_FILE);
+		Iterator<LogicTreePath> iterator = treeProcessor
+				.getLogicTreePathIterator(parser.parse());
+		iterator.next();
+		iterator.next();
+		assertFalse(iterator.hasNext());
+		iterator.next();
+	}
+
+	// check that a parallel stream of logic tree paths returns the paths in
+	// the same order as computeAllLogicTreePaths.
+	@Test
+	public void checkLogicTreePathParallelStream() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, GMPE_LT_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			List<LogicTreePath> expectedPaths = treeProcessor
+					.computeAllLogicTreePaths(tree);
+			List<LogicTreePath> computedPaths = treeProcessor
+					.getLogicTreePathStream(tree, true).collect(
+							Collectors.<LogicTreePath> toList());
+			assertEquals(expectedPaths, computedPaths);
+		}
+	}
+
+	// check that splitting the logic tree path spliterator gives two
+	// spliterators, the first with the first paths and the second with the
+	// remaining paths.
+	@Test
+	public void checkLogicTreePathSpliteratorSplit() {
+		LogicTreeParser parser = new LogicTreeParser(
+				SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+
+		Spliterator<LogicTreePath> second = treeProcessor
+				.getLogicTreePathSpliterator(tree);
+		assertEquals(18, second.estimateSize());
+		Spliterator<LogicTreePath> first = second.trySplit();
+		assertEquals(9, first.estimateSize());
+		assertEquals(9, second.estimateSize());
+
+		final List<LogicTreePath> computedPaths = new ArrayList<LogicTreePath>();
+		Consumer<LogicTreePath> action = new Consumer<LogicTreePath>() {
+			public void accept(LogicTreePath path) {
+				computedPaths.add(path);
+			}
+		};
+		first.forEachRemaining(action);
+		second.forEachRemaining(action);
+		assertEquals(treeProcessor.computeAllLogicTreePaths(tree),
+				computedPaths);
+	}
+
+	// check that the logic tree path spliterator reports exact sizes, also
+	// for non symmetric logic trees, and that splits are exactly sized.
+	@Test
+	public void checkLogicTreePathSpliteratorExactSize() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, GMPE_LT_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			int numberOfPaths = treeProcessor.computeAllLogicTreePaths(tree)
+					.size();
+			Spliterator<LogicTreePath> second = treeProcessor
+					.getLogicTreePathSpliterator(tree);
+			assertTrue(second.hasCharacteristics(Spliterator.SIZED));
+			assertTrue(second.hasCharacteristics(Spliterator.SUBSIZED));
+			assertFalse(second.hasCharacteristics(Spliterator.IMMUTABLE));
+			assertEquals(numberOfPaths, second.getExactSizeIfKnown());
+			Spliterator<LogicTreePath> first = second.trySplit();
+			final long[] count = new long[1];
+			Consumer<LogicTreePath> action = new Consumer<LogicTreePath>() {
+				public void accept(LogicTreePath path) {
+					count[0]++;
+				}
+			};
+			if (first != null) {
+				long firstSize = first.getExactSizeIfKnown();
+				first.forEachRemaining(action);
+				assertEquals(firstSize, count[0]);
+			}
+			second.forEachRemaining(action);
+			assertEquals(numberOfPaths, count[0]);
+		}
+	}
+
+	// check that path indexes follow the order of computeAllLogicTreePaths,
+	// and that ranking an unranked path gives back the path index.
+	@Test
+	public void checkLogicTreePathRanking() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, GMPE_LT_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			List<LogicTreePath> expectedPaths = treeProcessor
+					.computeAllLogicTreePaths(tree);
+			LogicTreePathRanker ranker = new LogicTreePathRanker(tree);
+			assertEquals(expectedPaths.size(), ranker.getNumberOfPaths());
+			for (int i = 0; i < expectedPaths.size(); i++) {
+				CompactLogicTreePath path = ranker.unrank(i);
+				assertEquals(expectedPaths.get(i), path.toLogicTreePath());
+				assertEquals(i, ranker.rank(path));
+				assertEquals(i, ranker.rank(path.getLeafNode()));
+			}
+		}
+	}
+
+	// check that ranking a path which does not end at a leaf node throws an
+	// exception.
+	@Test(expected = IllegalArgumentException.class)
+	public void checkLogicTreePathRankingNonLeafPath() {
+		LogicTreePathRanker ranker = new LogicTreePathRanker(
+				new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE).parse());
+		ranker.rank(new CompactLogicTreePath(ranker.getTree(), new int[] { 0 }));
+	}
+
+	// check that unranking an index larger than the number of paths throws an
+	// exception
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void checkLogicTreePathUnrankingOutOfBounds() {
+		LogicTreeParser parser = new LogicTreeParser(GMPE_LT_TEST_FILE);
+		LogicTreePathRanker ranker = new LogicTreePathRanker(parser.parse());
+		ranker.unrank(2);
+	}
+
+	// check that the sampler returns leaf nodes, and that sampling leaf nodes
+	// and paths with the same random numbers gives the same results.
+	@Test
+	public void checkLogicTreeSamplerLeafSampling() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		LogicTreeSampler sampler = new LogicTreeSampler(parser.parse());
+
+		long seed = 123456789;
+		Random leafRn = new Random(seed);
+		Random pathRn = new Random(seed);
+		for (int i = 0; i < 100; i++) {
+			int leaf = sampler.sampleLeaf(leafRn);
+			assertTrue(sampler.getTree().isLeaf(leaf));
+			List<LogicTreeNode> path = sampler.samplePath(pathRn).getPath();
+			assertEquals(sampler.getTree().getData(leaf),
+					path.get(path.size() - 1));
+		}
+	}
+
+	// check that parallel sampling gives the same paths as sequential
+	// sampling, and that each sample only depends on the seed and on its
+	// index.
+	@Test
+	public void checkParallelLogicTreePathSampling() {
+		LogicTreeParser parser = new LogicTreeParser(
+				SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+
+		long seed = 123456789;
+		int n = 1000;
+		List<LogicTreePath> sequentialPaths = treeProcessor
+				.sampleLogicTreePaths(tree, seed, n, false);
+		List<LogicTreePath> parallelPaths = treeProcessor
+				.sampleLogicTreePaths(tree, seed, n, true);
+		assertEquals(sequentialPaths, parallelPaths);
+
+		LogicTreeSampler sampler = new LogicTreeSampler(tree);
+		Set<LogicTreePath> expectedPaths = getExpectedPathsSymmetricLogicTree();
+		for (int i = n - 1; i >= 0; i--) {
+			assertEquals(sequentialPaths.get(i), sampler.samplePath(seed, i));
+			assertTrue(expectedPaths.contains(sequentialPaths.get(i)));
+		}
+	}
+
+	// check parallel logic tree path sampling, comparing observed and
+	// expected path probabilities (as in checkLogicTreePathSampling2).
+	@Test
+	public void checkParallelLogicTreePathSampling2() {
+		LogicTreeParser parser = new LogicTreeParser(
+				SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+
+		long seed = 123456789;
+		int n = 5000;
+		List<LogicTreePath> sampledPaths = treeProcessor.sampleLogicTreePaths(
+				tree, seed, n, true);
+
+		for (LogicTreePath path : getExpectedPathsSymmetricLogicTree()) {
+			double pathCount = 0.0;
+			for (LogicTreePath sampledPath : sampledPaths) {
+				if (sampledPath.equals(path)) {
+					pathCount = pathCount + 1.0;
+				}
+			}
+			assertEquals(path.getPathWeight(), pathCount / n, 0.01);
+		}
+	}
+
+	// check sampling methods comparing observed and expected branch
+	// probabilities at each branching level. With latin hypercube sampling,
+	// each branch of the (symmetric) logic tree is also sampled a number of
+	// times differing by less than two from the expected number. With
+	// stratified sampling, each path is also sampled a number of times
+	// differing by less than one from the expected number.
+	@Test
+	public void checkLogicTreePathSamplingMethods() {
+		LogicTreeParser parser = new LogicTreeParser(
+				SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+
+		long seed = 123456789;
+		int n = 1000;
+		for (SamplingMethod method : SamplingMethod.values()) {
+			List<LogicTreePath> sampledPaths = treeProcessor
+					.sampleLogicTreePaths(tree, method, seed, n);
+			assertEquals(n, sampledPaths.size());
+
+			// branch probabilities
+			double tolerance = 0.005;
+			if (method == SamplingMethod.MONTE_CARLO) {
+				tolerance = 0.03;
+			} else if (method == SamplingMethod.LATIN_HYPERCUBE) {
+				tolerance = 2.0 / n;
+			}
+			for (LogicTreePath path : getExpectedPathsSymmetricLogicTree()) {
+				for (int level = 1; level < path.getPath().size(); level++) {
+					LogicTreeNode branch = path.getPath().get(level);
+					double branchCount = 0.0;
+					for (LogicTreePath sampledPath : sampledPaths) {
+						if (sampledPath.getPath().get(level).equals(branch)) {
+							branchCount = branchCount + 1.0;
+						}
+					}
+					assertEquals(method.toString(),
+							branch.getUncertaintyWeight(), branchCount / n,
+							tolerance);
+				}
+			}
+
+			// path probabilities
+			if (method == SamplingMethod.STRATIFIED) {
+				for (LogicTreePath path : getExpectedPathsSymmetricLogicTree()) {
+					double pathCount = 0.0;
+					for (LogicTreePath sampledPath : sampledPaths) {
+						if (sampledPath.equals(path)) {
+							pathCount = pathCount + 1.0;
+						}
+					}
+					assertEquals(path.getPathWeight(), pathCount / n,
+							1.0 / n);
+				}
+			}
+		}
+	}
+
+	// check that joining three logic trees gives the product of the number of
+	// paths of each logic tree.
+	@Test
+	public void checkJoinThreeTrees() {
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(new LogicTreeParser(GMPE_LT_TEST_FILE).parse());
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		trees.add(new LogicTreeParser(GMPE_LT_TEST_FILE).parse());
+
+		Tree<LogicTreeNode> joinedTree = treeProcessor.joinTrees(trees);
+		assertEquals(2 * 18 * 2, treeProcessor.computeAllLogicTreePaths(
+				joinedTree).size());
+	}
+
+	// check that the product of logic trees has the same paths (in the same
+	// order) of the joined tree, and that sampling the product gives the same
+	// paths as sampling the joined tree.
+	@Test
+	public void checkLogicTreeProduct() {
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(new LogicTreeParser(NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		trees.add(new LogicTreeParser(GMPE_LT_TEST_FILE).parse());
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		LogicTreeProduct product = treeProcessor.getLogicTreeProduct(trees);
+		// trees are not modified
+		assertEquals(16, trees.get(0).getLeafNodes().size());
+
+		Tree<LogicTreeNode> joinedTree = treeProcessor.joinTrees(trees);
+		List<LogicTreePath> expectedPaths = treeProcessor
+				.computeAllLogicTreePaths(joinedTree);
+		assertEquals(expectedPaths.size(), product.getNumberOfPaths());
+		List<LogicTreePath> computedPaths = new ArrayList<LogicTreePath>();
+		for (LogicTreePath path : product) {
+			computedPaths.add(path);
+		}
+		assertEquals(expectedPaths, computedPaths);
+		for (int i = 0; i < expectedPaths.size(); i++) {
+			assertEquals(expectedPaths.get(i).getPathWeight(),
+					product.getPathWeight(i), 1e-15);
+		}
+
+		long seed = 123456789;
+		assertEquals(treeProcessor.sampleLogicTreePaths(joinedTree, new Random(
+				seed), 100), product.samplePaths(new Random(seed), 100));
+	}
+
+	// check logic tree statistics against the statistics computed from all
+	// the logic tree paths.
+	@Test
+	public void checkLogicTreeStatistics() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+
+		LogicTreeStatistics statistics = treeProcessor.computeStatistics(tree);
+		assertEquals(paths.size(), statistics.getNumberOfPaths());
+		assertEquals(1.0, statistics.getTotalWeight(), 1e-12);
+
+		for (Map.Entry<LogicTreeNode, Double> e : statistics
+				.getBranchWeights().entrySet()) {
+			double weight = 0.0;
+			for (LogicTreePath path : paths) {
+				if (path.getPath().contains(e.getKey())) {
+					weight = weight + path.getPathWeight();
+				}
+			}
+			assertEquals(weight, e.getValue(), 1e-12);
+		}
+
+		// source_model_3.xml has weight 0.2, and maxMagGRAbsolute 7.5 is in
+		// all the paths with weight 0.2
+		assertEquals(0.2, statistics.getUncertaintyModelWeight("sourceModel",
+				"source_model_3.xml"), 1e-12);
+		assertEquals(0.2, statistics.getBranchIDWeights().get("_31"), 1e-12);
+	}
+
+	// check that the top k paths are the k heaviest paths among all the logic
+	// tree paths, in decreasing order of weight.
+	@Test
+	public void checkTopLogicTreePaths() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+
+		List<LogicTreePath> topPaths = treeProcessor.computeTopLogicTreePaths(
+				tree, 5);
+		assertEquals(5, topPaths.size());
+		for (int i = 0; i < topPaths.size(); i++) {
+			assertTrue(paths.contains(topPaths.get(i)));
+			if (i > 0) {
+				assertTrue(topPaths.get(i - 1).getPathWeight() >= topPaths
+						.get(i).getPathWeight());
+			}
+		}
+		double minTopWeight = topPaths.get(topPaths.size() - 1)
+				.getPathWeight();
+		int heavier = 0;
+		for (LogicTreePath path : paths) {
+			if (path.getPathWeight() > minTopWeight) {
+				heavier++;
+				assertTrue(topPaths.contains(path));
+			}
+		}
+		assertTrue(heavier < 5);
+
+		List<LogicTreePath> allPaths = treeProcessor.computeTopLogicTreePaths(
+				tree, Integer.MAX_VALUE);
+		assertEquals(new HashSet<LogicTreePath>(paths),
+				new HashSet<LogicTreePath>(allPaths));
+	}
+
+	// check pruning by prefix weight against the paths computed without
+	// pruning: the paths kept are those whose nodes all have prefix weight
+	// above the threshold, and the weight of the other paths is reported.
+	@Test
+	public void checkPrunedLogicTreePaths() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+
+		double threshold = 0.05;
+		List<LogicTreePath> expectedPaths = new ArrayList<LogicTreePath>();
+		double remainingWeight = 0.0;
+		for (LogicTreePath path : paths) {
+			if (path.getPathWeight() >= threshold) {
+				expectedPaths.add(path);
+			} else {
+				remainingWeight = remainingWeight + path.getPathWeight();
+			}
+		}
+
+		PrunedLogicTreePaths pruned = treeProcessor
+				.computePrunedLogicTreePaths(tree, threshold);
+		assertEquals(expectedPaths, pruned.getPaths());
+		assertEquals(remainingWeight, pruned.getRemainingWeight(), 1e-12);
+		assertEquals(1.0, pruned.getTotalWeight(), 1e-12);
+
+		assertEquals(paths, treeProcessor.computePrunedLogicTreePaths(tree,
+				0.0).getPaths());
+	}
+
+	// check pruning by coverage: the paths returned are the heaviest ones,
+	// and cover the requested fraction of the total weight.
+	@Test
+	public void checkCoveringLogicTreePaths() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		int numPaths = treeProcessor.computeAllLogicTreePaths(tree).size();
+
+		PrunedLogicTreePaths pruned = treeProcessor
+				.computeCoveringLogicTreePaths(tree, 0.5);
+		List<LogicTreePath> paths = pruned.getPaths();
+		assertTrue(pruned.getCoveredWeight() >= 0.5);
+		assertTrue(pruned.getCoveredWeight()
+				- paths.get(paths.size() - 1).getPathWeight() < 0.5);
+		assertEquals(1.0 - pruned.getCoveredWeight(), pruned
+				.getRemainingWeight(), 1e-12);
+		assertEquals(treeProcessor.computeTopLogicTreePaths(tree,
+				paths.size()), paths);
+
+		assertEquals(numPaths, treeProcessor.computeCoveringLogicTreePaths(
+				tree, 1.0).getPaths().size());
+	}
+
+	// check that ten branches with weight 0.1 are valid only when weights are
+	// summed with compensation.
+	@Test
+	public void checkCompensatedWeightValidation() {
+		Tree<LogicTreeNode> tree = new Tree<LogicTreeNode>();
+		tree.setRootElement(new Node<LogicTreeNode>(new LogicTreeNode()));
+		for (int i = 0; i < 10; i++) {
+			tree.getRootElement().addChild(
+					new Node<LogicTreeNode>(new LogicTreeNode("b" + i,
+							"gmpeModel", "GMPE" + i, 0.1, "", "", "")));
+		}
+		assertFalse(treeProcessor.hasValidWeights(tree));
+		assertTrue(treeProcessor.hasValidWeights(tree,
+				WeightArithmetic.COMPENSATED));
+
+		tree.getRootElement().getChildren().get(0).data = new LogicTreeNode(
+				"b0", "gmpeModel", "GMPE0", 0.2, "", "", "");
+		assertFalse(treeProcessor.hasValidWeights(tree,
+				WeightArithmetic.COMPENSATED));
+	}
+
+	// check that path weights computed in log space do not underflow, and are
+	// equal to the products of the weights for the test logic tree.
+	@Test
+	public void checkLogSpacePathWeights() {
+		Tree<LogicTreeNode> tree = new Tree<LogicTreeNode>();
+		Node<LogicTreeNode> node = new Node<LogicTreeNode>(new LogicTreeNode(
+				"b0", "maxMagGRAbsolute", "7.0", 1.0, "", "", ""));
+		tree.setRootElement(node);
+		int depth = 400;
+		for (int i = 1; i <= depth; i++) {
+			Node<LogicTreeNode> child = new Node<LogicTreeNode>(
+					new LogicTreeNode("b" + i, "maxMagGRAbsolute", "7.0", 0.1,
+							"", "", ""));
+			node.addChild(child);
+			node = child;
+		}
+		LogicTreePath plainPath = treeProcessor.computeAllLogicTreePaths(tree)
+				.get(0);
+		assertEquals(0.0, plainPath.getPathWeight(), 0.0);
+		assertFalse(plainPath instanceof LogWeightLogicTreePath);
+		LogicTreePath logPath = treeProcessor.computeAllLogicTreePaths(tree,
+				WeightArithmetic.COMPENSATED).get(0);
+		assertTrue(logPath instanceof LogWeightLogicTreePath);
+		assertEquals(depth * Math.log(0.1), logPath.getLogPathWeight(),
+				1e-12 * depth);
+		LogicTreePath sampledPath = new LogicTreeSampler(tree,
+				WeightArithmetic.COMPENSATED).samplePath(new Random(123));
+		assertEquals(depth * Math.log(0.1), sampledPath.getLogPathWeight(),
+				1e-12 * depth);
+
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		tree = parser.parse();
+		List<LogicTreePath> paths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+		List<LogicTreePath> logPaths = treeProcessor.computeAllLogicTreePaths(
+				tree, WeightArithmetic.COMPENSATED);
+		assertEquals(paths.size(), logPaths.size());
+		for (int i = 0; i < paths.size(); i++) {
+			assertEquals(paths.get(i).getPath(), logPaths.get(i).getPath());
+			assertEquals(paths.get(i).getPathWeight(), logPaths.get(i)
+					.getPathWeight(), 1e-15);
+		}
+	}
+
+	// check that folding visits each node once, passes states from parents
+	// to children, and gives the paths and path weights in the same order as
+	// computeAllLogicTreePaths.
+	@Test
+	public void checkFoldLogicTree() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+
+		final int[] numVisitedNodes = new int[1];
+		final List<LogicTreePath> foldedPaths = new ArrayList<LogicTreePath>();
+		treeProcessor.foldLogicTree(tree, new ArrayList<LogicTreeNode>(),
+				new LogicTreeVisitor<List<LogicTreeNode>>() {
+					public List<LogicTreeNode> visitNode(
+							List<LogicTreeNode> parentState, LogicTreeNode node) {
+						numVisitedNodes[0]++;
+						List<LogicTreeNode> state = new ArrayList<LogicTreeNode>(
+								parentState);
+						state.add(node);
+						return state;
+					}
+
+					public void visitLeaf(List<LogicTreeNode> state,
+							double pathWeight) {
+						foldedPaths.add(new LogicTreePath(state, pathWeight));
+					}
+				});
+		assertEquals(tree.toList().size(), numVisitedNodes[0]);
+		assertEquals(paths, foldedPaths);
+	}
+
+	// check that Gray code enumeration gives all the logic tree paths, with
+	// consecutive paths differing in one branching level for a symmetric
+	// logic tree, and that changed levels are correctly reported.
+	@Test
+	public void checkGrayCodeEnumeration() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE };
+		for (String file : files) {
+			LogicTreeParser parser = new LogicTreeParser(file);
+			Tree<LogicTreeNode> tree = parser.parse();
+			List<LogicTreePath> paths = treeProcessor
+					.computeAllLogicTreePaths(tree);
+
+			LogicTreeGrayCodeIterator i = treeProcessor
+					.getLogicTreeGrayCodeIterator(tree);
+			List<LogicTreePath> grayCodePaths = new ArrayList<LogicTreePath>();
+			LogicTreePath previous = null;
+			while (i.hasNext()) {
+				LogicTreePath path = i.next();
+				int numChanged = 0;
+				for (int level = 0; level < path.getPath().size(); level++) {
+					boolean changed = previous == null
+							|| level >= previous.getPath().size()
+							|| !path.getPath().get(level).equals(
+									previous.getPath().get(level));
+					assertEquals(changed, i.hasChanged(level));
+					if (changed) {
+						numChanged++;
+					}
+				}
+				if (previous != null
+						&& file.equals(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)) {
+					assertEquals(1, numChanged);
+				}
+				grayCodePaths.add(path);
+				previous = path;
+			}
+			assertEquals(paths.size(), grayCodePaths.size());
+			assertEquals(new HashSet<LogicTreePath>(paths),
+					new HashSet<LogicTreePath>(grayCodePaths));
+		}
+	}
+
+	// check that the factorized logic tree gives the same paths, in the same
+	// order, and the same samples as the explicit logic tree.
+	@Test
+	public void checkFactorizedLogicTree() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, GMPE_LT_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			FactorizedLogicTree factorizedTree = new LogicTreeParser(file)
+					.parseFactorized();
+			List<LogicTreePath> paths = treeProcessor
+					.computeAllLogicTreePaths(tree);
+
+			assertEquals(!file.equals(NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE),
+					factorizedTree.isSymmetric());
+			assertEquals(tree.toList().size(), factorizedTree
+					.getNumberOfExpandedNodes());
+			assertEquals(paths, treeProcessor
+					.computeAllLogicTreePaths(factorizedTree.toTree()));
+
+			LogicTreeProduct product = new LogicTreeProduct(factorizedTree);
+			assertEquals(paths.size(), product.getNumberOfPaths());
+			List<LogicTreePath> productPaths = new ArrayList<LogicTreePath>();
+			for (LogicTreePath path : product) {
+				productPaths.add(path);
+			}
+			assertEquals(paths, productPaths);
+
+			assertEquals(treeProcessor.sampleLogicTreePaths(tree, new Random(
+					123), 100), product.samplePaths(new Random(123), 100));
+		}
+	}
+
+	// check that the graph of a logic tree stores identical subtrees once,
+	// and gives the same paths, path indexes and samples as the logic tree.
+	@Test
+	public void checkLogicTreeDag() {
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		trees.add(new LogicTreeParser(NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		List<Tree<LogicTreeNode>> gmpeTrees = new ArrayList<Tree<LogicTreeNode>>();
+		gmpeTrees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE)
+				.parse());
+		gmpeTrees.add(new LogicTreeParser(GMPE_LT_TEST_FILE).parse());
+		trees.add(treeProcessor.joinTrees(gmpeTrees));
+
+		for (Tree<LogicTreeNode> tree : trees) {
+			List<LogicTreePath> paths = treeProcessor
+					.computeAllLogicTreePaths(tree);
+			LogicTreeDag dag = new LogicTreeDag(tree);
+			assertTrue(dag.getNumberOfNodes() < tree.toList().size());
+			assertEquals(paths.size(), dag.getNumberOfPaths());
+
+			LogicTreeDagPaths dagPaths = new LogicTreeDagPaths(dag);
+			List<LogicTreePath> enumeratedPaths = new ArrayList<LogicTreePath>();
+			for (LogicTreePath path : dagPaths) {
+				enumeratedPaths.add(path);
+			}
+			assertEquals(paths, enumeratedPaths);
+			for (int i = 0; i < paths.size(); i++) {
+				assertEquals(paths.get(i), dagPaths.getPath(i));
+			}
+			assertEquals(treeProcessor.sampleLogicTreePaths(tree, new Random(
+					123), 100), dagPaths.samplePaths(new Random(123), 100));
+		}
+
+		// in the symmetric logic tree, the subtrees below the branches of
+		// the first branching level are identical
+		LogicTreeDag dag = new LogicTreeDag(trees.get(0));
+		int root = dag.getRoot();
+		int first = dag.getChild(root, 0);
+		int second = dag.getChild(root, 1);
+		assertEquals(dag.getChild(first, 0), dag.getChild(second, 0));
+		assertEquals(dag.getNumberOfNodes(), new LogicTreeParser(
+				SYMMETRIC_LT_SRC_MODEL_TEST_FILE).parseDag().getNumberOfNodes());
+	}
+
+	// check that the graph of joined logic trees is built without expanding
+	// the joined trees: its distinct subtrees are those of each logic tree,
+	// and its number of paths is the product of their numbers of paths.
+	@Test
+	public void checkLogicTreeDagOfJoinedTrees() {
+		String[] files = { GMPE_LT_TEST_FILE, SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, GMPE_LT_TEST_FILE };
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		int numberOfNodes = 0;
+		long numberOfPaths = 1;
+		for (String file : files) {
+			LogicTreeDag dag = new LogicTreeParser(file).parseDag();
+			numberOfNodes = numberOfNodes + dag.getNumberOfNodes();
+			numberOfPaths = numberOfPaths * dag.getNumberOfPaths();
+			trees.add(new LogicTreeParser(file).parse());
+		}
+		LogicTreeDag dag = new LogicTreeDag(treeProcessor.joinTrees(trees));
+		assertEquals(numberOfNodes, dag.getNumberOfNodes());
+		assertEquals(numberOfPaths, dag.getNumberOfPaths());
+
+		LogicTreeDagStatistics statistics = treeProcessor
+				.computeStatistics(dag);
+		assertEquals(1.0, statistics.getTotalWeight(), 1e-12);
+		// the roots of the joined logic trees are reached by all the paths
+		int roots = 0;
+		for (int i = 0; i < dag.getNumberOfNodes(); i++) {
+			if (dag.getData(i).equals(dag.getData(dag.getRoot()))) {
+				assertEquals(1.0, statistics.getNodeProbability(i), 1e-12);
+				assertEquals(1.0, statistics.getMarginalWeight(i), 1e-12);
+				roots++;
+			}
+		}
+		assertEquals(files.length, roots);
+	}
+
+	// check that the graph of an empty tree is rejected.
+	@Test(expected = IllegalArgumentException.class)
+	public void checkLogicTreeDagOfEmptyTree() {
+		new LogicTreeDag(new Tree<LogicTreeNode>());
+	}
+
+	// check the statistics computed on the graph of a logic tree against the
+	// statistics computed on the tree.
+	@Test
+	public void checkLogicTreeDagStatistics() {
+		String[] files = { SYMMETRIC_LT_SRC_MODEL_TEST_FILE,
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE, GMPE_LT_TEST_FILE };
+		for (String file : files) {
+			Tree<LogicTreeNode> tree = new LogicTreeParser(file).parse();
+			LogicTreeStatistics expected = treeProcessor
+					.computeStatistics(tree);
+			LogicTreeDag dag = new LogicTreeDag(tree);
+			LogicTreeDagStatistics statistics = treeProcessor
+					.computeStatistics(dag);
+			assertEquals(expected.getNumberOfPaths(), statistics
+					.getNumberOfPaths());
+			assertEquals(expected.getTotalWeight(), statistics
+					.getTotalWeight(), 1e-12);
+			assertEquals(expected.getBranchWeights().size(), statistics
+					.getBranchWeights().size());
+			for (Map.Entry<LogicTreeNode, Double> e : expected
+					.getBranchWeights().entrySet()) {
+				assertEquals(e.getValue(), statistics.getBranchWeights().get(
+						e.getKey()), 1e-12);
+			}
+
+			// the probabilities of the leaf nodes sum to the total weight
+			double probability = 0.0;
+			for (int i = 0; i < dag.getNumberOfNodes(); i++) {
+				if (dag.isLeaf(i)) {
+					probability = probability
+							+ statistics.getNodeProbability(i);
+				}
+			}
+			assertEquals(expected.getTotalWeight(), probability, 1e-12);
+		}
+	}
+
+	// check that the paths reconstructed from the leaf nodes, following the
+	// parent links, are the logic tree paths.
+	@Test
+	public void checkLogicTreePathFromLeafNode() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = treeProcessor
+				.computeAllLogicTreePaths(tree);
+		List<Node<LogicTreeNode>> leafNodes = tree.getLeafNodes();
+		assertEquals(paths.size(), leafNodes.size());
+		for (int i = 0; i < leafNodes.size(); i++) {
+			assertEquals(paths.get(i), treeProcessor.getLogicTreePath(tree,
+					leafNodes.get(i)));
+			assertEquals(paths.get(i).getPath().size() - 1,
+					tree.getDepth(leafNodes.get(i)));
+		}
+	}
+
+	// check that paths cannot be reconstructed below a shared subtree.
+	@Test(expected = IllegalArgumentException.class)
+	public void checkLogicTreePathBelowSharedSubtree() {
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE).parse());
+		trees.add(new LogicTreeParser(GMPE_LT_TEST_FILE).parse());
+		Tree<LogicTreeNode> tree = treeProcessor.joinTrees(trees);
+		treeProcessor.getLogicTreePath(tree, tree.getLeafNodes().get(0));
+	}
+
+	// check that the paths to a leaf node below a shared subtree are the
+	// source model paths followed by the gmpe path of the node, and that the
+	// number of paths, depth and prefix weight of the node are consistent
+	// with them.
+	@Test
+	public void checkLogicTreePathsBelowSharedSubtree() {
+		List<Tree<LogicTreeNode>> trees = new ArrayList<Tree<LogicTreeNode>>();
+		trees.add(new LogicTreeParser(SYMMETRIC_LT_SRC_MODEL_TEST_FILE).parse());
+		trees.add(new LogicTreeParser(GMPE_LT_TEST_FILE).parse());
+		List<LogicTreePath> sourceModelPaths = treeProcessor
+				.computeAllLogicTreePaths(trees.get(0));
+		Tree<LogicTreeNode> tree = treeProcessor.joinTrees(trees);
+		for (Node<LogicTreeNode> leaf : trees.get(1).getLeafNodes()) {
+			LogicTreePath gmpePath = treeProcessor.getLogicTreePath(
+					trees.get(1), leaf);
+			List<LogicTreePath> expected = new ArrayList<LogicTreePath>();
+			double weight = 0;
+			for (LogicTreePath sourceModelPath : sourceModelPaths) {
+				LogicTreePath path = new LogicTreePath(
+						new ArrayList<LogicTreeNode>(), 1);
+				for (LogicTreeNode node : sourceModelPath.getPath()) {
+					path.addNode(node);
+				}
+				for (LogicTreeNode node : gmpePath.getPath()) {
+					path.addNode(node);
+				}
+				expected.add(path);
+				weight = weight + path.getPathWeight();
+			}
+			assertEquals(expected, treeProcessor.getLogicTreePaths(tree, leaf));
+			assertEquals(expected.size(), tree.getNumberOfPathsFromRoot(leaf));
+			assertEquals(weight, tree.getPrefixWeight(leaf), 1e-12);
+			assertEquals(expected.get(0).getPath().size() - 1,
+					tree.getDepth(leaf));
+		}
+
+		// a node outside the shared subtree has a single path
+		Node<LogicTreeNode> node = tree.getRootElement().getChildren().get(0);
+		assertEquals(1, tree.getNumberOfPathsFromRoot(node));
+		List<LogicTreePath> paths = treeProcessor.getLogicTreePaths(tree, node);
+		assertEquals(1, paths.size());
+		assertEquals(paths.get(0), treeProcessor.getLogicTreePath(tree, node));
+	}
+
 	private Set<LogicTreePath> getJoinedTreesExpectedPaths() {
 		Set<LogicTreePath> expectedPaths = new HashSet<LogicTreePath>();
 		// expected source model and gmpe logic tree paths
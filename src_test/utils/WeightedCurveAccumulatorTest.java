@@ -0,0 +1,73 @@
+package utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import parser.LogicTreeNode;
+import parser.LogicTreeParser;
+import tree.Tree;
+
+public class WeightedCurveAccumulatorTest {
+
+	// test file containing non-symmetric logic tree defining source model
+	// epistemic uncertainties
+	public static final String NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE = "non-symmetric-logic-tree-source-model.xml";
+
+	@Before
+	public void setUp() {
+		System.setProperty("openquake.nrml.schema", new File(
+				"docs/schema/nrml.xsd").getAbsolutePath());
+	}
+
+	// check that curves accumulated in parallel have the same weighted mean
+	// as the one computed by the aggregator.
+	@Test
+	public void weightedCurveAccumulatorTest() {
+		LogicTreeParser parser = new LogicTreeParser(
+				NON_SYMMETRIC_LT_SRC_MODEL_TEST_FILE);
+		Tree<LogicTreeNode> tree = parser.parse();
+		List<LogicTreePath> paths = new LogicTreeUtils()
+				.computeAllLogicTreePaths(tree);
+		// index of each path, from which its curve is computed
+		final Map<LogicTreePath, Integer> indexes = new IdentityHashMap<LogicTreePath, Integer>();
+		for (int i = 0; i < paths.size(); i++) {
+			indexes.put(paths.get(i), i);
+		}
+		final int length = 1001;
+		Function<LogicTreePath, double[]> curves = new Function<LogicTreePath, double[]>() {
+			public double[] apply(LogicTreePath path) {
+				double[] curve = new double[length];
+				int index = indexes.get(path);
+				for (int i = 0; i < length; i++) {
+					curve[i] = Math.exp(-0.01 * i * (index + 1));
+				}
+				return curve;
+			}
+		};
+
+		LogicTreeResultAggregator aggregator = new LogicTreeResultAggregator(
+				length, 10);
+		for (LogicTreePath path : paths) {
+			aggregator.add(path, curves.apply(path));
+		}
+		WeightedCurveAccumulator sequential = WeightedCurveAccumulator
+				.accumulate(paths, length, curves, true, false);
+		WeightedCurveAccumulator parallel = WeightedCurveAccumulator
+				.accumulate(paths, length, curves, true, true);
+		assertArrayEquals(aggregator.getMean(), sequential.getMean(), 1e-12);
+		assertArrayEquals(aggregator.getMean(), parallel.getMean(), 1e-12);
+
+		WeightedCurveAccumulator unweighted = WeightedCurveAccumulator
+				.accumulate(paths, length, curves, false, true);
+		assertEquals(paths.size(), unweighted.getTotalWeight(), 0.0);
+	}
+}